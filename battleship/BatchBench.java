@@ -0,0 +1,41 @@
+package battleship;
+
+/** Times a BatchSim of 10x10 games against the same number of machine
+ *  games played one at a time as Game objects, and reports the speedup.
+ *  Both play the density strategy with unlimited time.  Run with
+ *  --add-modules jdk.incubator.vector to use the SIMD kernels.
+ *  @author Andrew Fang */
+class BatchBench {
+
+    /** Runs the benchmark.  IGNORED is ignored. */
+    public static void main(String... ignored) {
+        for (int round = 0; round < ROUNDS; round++) {
+            BatchSim sim = new BatchSim(Main.SIZE, GAMES, round);
+            sim.run();
+            long batch = sim.nanos();
+
+            long start = System.nanoTime();
+            int[] wins = new int[2];
+            for (int g = 0; g < GAMES; g++) {
+                Game game = new Game(0, round * GAMES + g, Main.BIG,
+                                     Main.SIZE, 0);
+                wins[game.playHeadless().ordinal()] += 1;
+            }
+            long single = System.nanoTime() - start;
+
+            System.out.printf("%d games: batch %.0f games/s, one at a time"
+                              + " %.0f games/s, speedup %.1fx%n", GAMES,
+                              GAMES * 1e9 / batch, GAMES * 1e9 / single,
+                              (double) single / batch);
+            System.out.printf("  batch: %s%n  one at a time: %d games:"
+                              + " %s won %d, %s won %d%n", sim.summary(),
+                              GAMES, Side.PLAYER1, wins[0], Side.PLAYER2,
+                              wins[1]);
+        }
+    }
+
+    /** The number of games played each way per round. */
+    private static final int GAMES = 2000;
+    /** The number of rounds. */
+    private static final int ROUNDS = 3;
+}
@@ -0,0 +1,238 @@
+package battleship;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static battleship.Side.*;
+
+/** Plays many machine-against-machine games in lockstep.  Rather than
+ *  playing one game through and then the next, every unfinished game
+ *  takes one shot per step, and the games live side by side in a
+ *  GameStore.  Each step runs in stages, and each stage runs once across
+ *  the whole batch: what each attacker knows is decoded from the store,
+ *  the density maps of all the boards are built by one pass of the
+ *  Density kernels over the boards stacked together, the squares are
+ *  chosen, and then every shot is fired into the store.  The batch is
+ *  taken BLOCK games at a time, so that the kernels' arrays stay in
+ *  cache.  The rules and the targeting are those of EnemyBoard and
+ *  MachinePlayer (with unlimited time).
+ *  @author Andrew Fang */
+class BatchSim {
+
+    /** A batch of GAMES games on SIZExSIZE boards, with randomness
+     *  (fleet placement and tie breaking) drawn from a stream split from
+     *  SEED for each game, so that a game plays the same in any batch.
+     *  The fleets are placed at random; use load to replace them. */
+    BatchSim(int size, int games, long seed) {
+        _size = size;
+        _cells = size * size;
+        _games = games;
+        _seed = seed;
+        _store = new GameStore(size, games);
+        _view = _store.view();
+        GameRandom root = new GameRandom(seed);
+        _random = new GameRandom[games];
+        _winner = new Side[games];
+        _live = new int[games];
+        _choice = new int[games];
+        _numLive = games;
+        Metrics.GAMES.addAndGet(games);
+        for (int g = 0; g < games; g++) {
+            _random[g] = root.split(g);
+            _live[g] = _store.add();
+            _store.placeRandomly(g, PLAYER1, _random[g]);
+            _store.placeRandomly(g, PLAYER2, _random[g]);
+        }
+        _block = Math.max(1, Math.min(games, BLOCK));
+        _kernels = Density.create(size, _block);
+        _known = new byte[_block * _cells];
+        _density = new int[_block * _cells];
+    }
+
+    /** Replaces the fleet of SIDE in game G by the one on BOARD. */
+    void load(int g, Side side, SelfBoard board) {
+        _store.place(g, side, board);
+    }
+
+    /** Plays every game to the end. */
+    void run() {
+        long start = System.nanoTime();
+        while (_numLive > 0) {
+            step(PLAYER1);
+            step(PLAYER2);
+        }
+        _nanos += System.nanoTime() - start;
+    }
+
+    /** Returns the time spent playing, in nanoseconds. */
+    long nanos() {
+        return _nanos;
+    }
+
+    /** Appends the results of the finished games to OUT.  The time of a
+     *  turn is the mean over the whole batch. */
+    void record(ResultStore.Writer out) throws IOException {
+        long shots = 0;
+        for (int g = 0; g < _games; g++) {
+            shots += shots(g, PLAYER1) + shots(g, PLAYER2);
+        }
+        long turnNanos = shots == 0 ? 0 : _nanos / shots;
+        for (int g = 0; g < _games; g++) {
+            if (_winner[g] != null) {
+                out.append(_seed, g, Strategy.DENSITY, Strategy.DENSITY,
+                           _size, _winner[g], shots(g, PLAYER1),
+                           shots(g, PLAYER2), turnNanos);
+            }
+        }
+    }
+
+    /** Has ATTACKER take one shot in every unfinished game. */
+    void step(Side attacker) {
+        for (int from = 0; from < _numLive; from += _block) {
+            int count = Math.min(_block, _numLive - from);
+            for (int i = 0; i < count; i++) {
+                _store.known(_live[from + i], attacker, _known, i * _cells);
+            }
+            _kernels.setBoards(count);
+            for (int i = 0; i < count; i++) {
+                _kernels.load(i, _known, i * _cells);
+            }
+            _kernels.clear();
+            for (Shipname ship : MachinePlayer.FLEET) {
+                _kernels.add(ship.size());
+            }
+            for (int i = 0; i < count; i++) {
+                _kernels.copyValues(i, _density, i * _cells);
+            }
+            for (int i = 0; i < count; i++) {
+                int base = i * _cells;
+                _choice[from + i] =
+                    choose(_known, _density, base, _cells,
+                           best(_known, _density, base, _cells),
+                           _random[_live[from + i]]);
+            }
+        }
+
+        int kept = 0;
+        for (int i = 0; i < _numLive; i++) {
+            int g = _live[i];
+            if (_store.fire(g, attacker, _choice[i])
+                && _view.at(g, attacker).allSunk()) {
+                _winner[g] = attacker;
+            } else {
+                _live[kept] = g;
+                kept += 1;
+            }
+        }
+        _numLive = kept;
+    }
+
+    /** Returns the greatest density in DENSITY of the CELLS squares of
+     *  the board at BASE in KNOWN that are still unknown. */
+    static int best(byte[] known, int[] density, int base, int cells) {
+        int best = -1;
+        for (int k = base; k < base + cells; k++) {
+            if (known[k] == UNKNOWN && density[k] > best) {
+                best = density[k];
+            }
+        }
+        return best;
+    }
+
+    /** Returns one of the squares, counting from 0, of the board at
+     *  BASE in KNOWN and DENSITY that is still unknown and has density
+     *  BEST, choosing uniformly with RANDOM among the CELLS squares. */
+    static int choose(byte[] known, int[] density, int base, int cells,
+                      int best, Random random) {
+        int ties = 0;
+        for (int k = 0; k < cells; k++) {
+            if (known[base + k] == UNKNOWN && density[base + k] == best) {
+                ties += 1;
+            }
+        }
+        int pick = random.nextInt(ties);
+        for (int k = 0; k < cells; k++) {
+            if (known[base + k] == UNKNOWN && density[base + k] == best) {
+                if (pick == 0) {
+                    return k;
+                }
+                pick -= 1;
+            }
+        }
+        throw new AssertionError("no square of density " + best);
+    }
+
+    /** Returns the winner of game G, or null if it is not over. */
+    Side winner(int g) {
+        return _winner[g];
+    }
+
+    /** Returns the shots SIDE has taken in game G. */
+    int shots(int g, Side side) {
+        return _view.at(g, side).shotsTaken();
+    }
+
+    /** Returns the number of games in this batch. */
+    int games() {
+        return _games;
+    }
+
+    /** Returns a summary of the results of the finished games. */
+    String summary() {
+        int[] wins = new int[2];
+        long shotsToWin = 0;
+        int done = 0;
+        for (int g = 0; g < _games; g++) {
+            if (_winner[g] != null) {
+                done += 1;
+                wins[_winner[g].ordinal()] += 1;
+                shotsToWin += shots(g, _winner[g]);
+            }
+        }
+        return String.format("%d games: %s won %d, %s won %d,"
+                             + " %.2f shots to win on average", done,
+                             PLAYER1, wins[0], PLAYER2, wins[1],
+                             done == 0 ? 0.0 : (double) shotsToWin / done);
+    }
+
+    /** Values of KNOWN squares. */
+    static final byte UNKNOWN = 0, MISS = 1, HIT = 2;
+
+    /** The most games whose density maps are built in one pass. */
+    static final int BLOCK = 256;
+
+    /** The length of a side of the boards. */
+    private final int _size;
+    /** The number of squares on a board. */
+    private final int _cells;
+    /** The number of games. */
+    private final int _games;
+    /** The seed of the batch. */
+    private final long _seed;
+    /** The time spent playing, in nanoseconds. */
+    private long _nanos;
+    /** The games. */
+    private final GameStore _store;
+    /** A view of the games in _store. */
+    private final GameStore.View _view;
+    /** By game, its source of randomness. */
+    private final GameRandom[] _random;
+    /** The number of games in a block. */
+    private final int _block;
+    /** Builds the density maps of a block of games at a time. */
+    private final Density _kernels;
+    /** What the attacker knows of each board of a block, board after
+     *  board, as UNKNOWN, MISS or HIT. */
+    private final byte[] _known;
+    /** The density maps of the boards of a block. */
+    private final int[] _density;
+    /** The square chosen in each unfinished game, in the order of
+     *  _live. */
+    private final int[] _choice;
+    /** The winner of each game, or null. */
+    private final Side[] _winner;
+    /** The unfinished games, in _live[0 .. _numLive-1]. */
+    private final int[] _live;
+    /** The number of unfinished games. */
+    private int _numLive;
+}
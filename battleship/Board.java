@@ -0,0 +1,10 @@
+package battleship;
+
+/** What one player knows of the other's board, and the means to shoot
+ *  at it.  Squares are numbered by column and row from 1, as in a Move.
+ *  @author Andrew Fang */
+abstract class Board implements ReadOnlyBoard {
+
+    /** Fires at the square of M. */
+    abstract void makeMove(Move m);
+}
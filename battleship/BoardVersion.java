@@ -0,0 +1,195 @@
+package battleship;
+
+import static battleship.Piece.*;
+
+/** An immutable version of what is known of an enemy board, for searches
+ *  that branch on the results of shots they have not taken.  Shooting at
+ *  a version returns a new version and leaves the old one as it was (a
+ *  version is a ReadOnlyBoard, with no makeMove to change it), so
+ *  any number of threads can explore different branches from a shared
+ *  parent without locks or copies of the board.
+ *
+ *  Versions share structure.  The squares are numbered row by row from 0
+ *  and kept in leaves of 64, each holding a mask of the squares shot at
+ *  and a mask of the hits; a version is a root array of leaves.  A shot
+ *  makes one new leaf and a new root that points at the old leaves for
+ *  the rest, so it costs a few dozen bytes whatever the board's size.
+ *  Each version also carries a hash of its known squares, kept up to
+ *  date a shot at a time, so that searches can recognise positions they
+ *  have seen.
+ *  @author Andrew Fang */
+final class BoardVersion implements ReadOnlyBoard {
+
+    /** Returns the version of what is known of BOARD as it stands. */
+    static BoardVersion of(ReadOnlyBoard board) {
+        int n = board.size();
+        Leaf[] leaves = new Leaf[(n * n + Long.SIZE - 1) / Long.SIZE];
+        long[] shots = new long[leaves.length], hits = new long[leaves.length];
+        long hash = 0;
+        int shotCount = 0, hitCount = 0;
+        for (int k = 0; k < n * n; k++) {
+            Piece p = board.get(k % n + 1, k / n + 1);
+            if (p != UNKNOWN) {
+                boolean hit = p == HIT;
+                shots[k / Long.SIZE] |= 1L << k;
+                shotCount += 1;
+                if (hit) {
+                    hits[k / Long.SIZE] |= 1L << k;
+                    hitCount += 1;
+                }
+                hash ^= key(k, hit);
+            }
+        }
+        for (int w = 0; w < leaves.length; w++) {
+            leaves[w] = shots[w] == 0 ? EMPTY : new Leaf(shots[w], hits[w]);
+        }
+        int sunk = 0;
+        for (Shipname ship : MachinePlayer.FLEET) {
+            if (board.sunk(ship)) {
+                sunk |= 1 << ship.ordinal();
+            }
+        }
+        return new BoardVersion(n, leaves, shotCount, hitCount, sunk, hash);
+    }
+
+    /** A version of an NxN board with the squares in LEAVES known, SHOTS
+     *  shots and HITS hits taken, the ships whose ordinals are the bits
+     *  of SUNK sunk, and hash HASH. */
+    private BoardVersion(int n, Leaf[] leaves, int shots, int hits, int sunk,
+                         long hash) {
+        _size = n;
+        _leaves = leaves;
+        _shots = shots;
+        _hits = hits;
+        _sunk = sunk;
+        _hash = hash;
+    }
+
+    /** Returns this version after a shot at the free square of M that hit
+     *  iff HIT and sank SANK, or nothing if SANK is null. */
+    BoardVersion shoot(Move m, boolean hit, Shipname sank) {
+        int k = (m.getRow() - 1) * _size + m.getCol() - 1;
+        int w = k / Long.SIZE;
+        Leaf old = _leaves[w];
+        Leaf[] leaves = _leaves.clone();
+        leaves[w] = new Leaf(old.shots | 1L << k,
+                             hit ? old.hits | 1L << k : old.hits);
+        return new BoardVersion(_size, leaves, _shots + 1,
+                                hit ? _hits + 1 : _hits,
+                                sank == null ? _sunk
+                                : _sunk | 1 << sank.ordinal(),
+                                _hash ^ key(k, hit));
+    }
+
+    @Override
+    public int size() {
+        return _size;
+    }
+
+    @Override
+    public Piece get(int col, int row) {
+        int k = (row - 1) * _size + col - 1;
+        Leaf leaf = _leaves[k / Long.SIZE];
+        if ((leaf.shots & 1L << k) == 0) {
+            return UNKNOWN;
+        }
+        return (leaf.hits & 1L << k) != 0 ? HIT : MISS;
+    }
+
+    @Override
+    public int shotsTaken() {
+        return _shots;
+    }
+
+    @Override
+    public int hits() {
+        return _hits;
+    }
+
+    @Override
+    public boolean sunk(Shipname ship) {
+        return (_sunk & 1 << ship.ordinal()) != 0;
+    }
+
+    @Override
+    public boolean allSunk() {
+        for (Shipname ship : MachinePlayer.FLEET) {
+            if (!sunk(ship)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(_hash);
+    }
+
+    /** Returns the hash of the known squares, as a long. */
+    long hash() {
+        return _hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof BoardVersion)) {
+            return false;
+        }
+        BoardVersion v = (BoardVersion) obj;
+        if (v._hash != _hash || v._size != _size || v._shots != _shots
+            || v._sunk != _sunk) {
+            return false;
+        }
+        for (int w = 0; w < _leaves.length; w++) {
+            Leaf a = _leaves[w], b = v._leaves[w];
+            if (a != b && (a.shots != b.shots || a.hits != b.hits)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the hash key of a shot at square K that hit iff HIT. */
+    private static long key(int k, boolean hit) {
+        long z = (2L * k + (hit ? 1 : 0) + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /** 64 squares of a version: those shot at and those hit. */
+    private static final class Leaf {
+
+        /** A leaf with the squares of SHOTS shot at and of HITS hit. */
+        Leaf(long shots, long hits) {
+            this.shots = shots;
+            this.hits = hits;
+        }
+
+        /** The squares shot at. */
+        final long shots;
+        /** The squares hit. */
+        final long hits;
+    }
+
+    /** The leaf of 64 squares none of which is known. */
+    private static final Leaf EMPTY = new Leaf(0, 0);
+
+    /** The length of a side of the board. */
+    private final int _size;
+    /** The squares, 64 to a leaf.  Shared with other versions, and never
+     *  changed. */
+    private final Leaf[] _leaves;
+    /** The number of shots taken. */
+    private final int _shots;
+    /** The number of hits. */
+    private final int _hits;
+    /** The ships sunk, a bit per ordinal. */
+    private final int _sunk;
+    /** The hash of the known squares. */
+    private final long _hash;
+}
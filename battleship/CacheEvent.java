@@ -0,0 +1,34 @@
+package battleship;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** A flight-recorder event for one lookup in one of the AI's caches.
+ *  @author Andrew Fang */
+@Name("battleship.CacheLookup")
+@Label("Cache Lookup")
+@Category("Battleship")
+@Description("A lookup in an AI cache")
+class CacheEvent extends Event {
+
+    /** The name of the cache. */
+    @Label("Cache")
+    String cache;
+
+    /** True iff the lookup found its entry. */
+    @Label("Hit")
+    boolean hit;
+
+    /** Records a lookup in CACHE that hit iff HIT. */
+    static void lookup(String cache, boolean hit) {
+        CacheEvent e = new CacheEvent();
+        if (e.shouldCommit()) {
+            e.cache = cache;
+            e.hit = hit;
+            e.commit();
+        }
+    }
+}
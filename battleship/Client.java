@@ -0,0 +1,75 @@
+package battleship;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/** The thin client of a Daemon: sends its arguments, which are those of
+ *  Main, to the daemon listening on the Unix domain socket named by the
+ *  system property battleship.socket (by default Daemon.SOCKET), copies
+ *  what the job prints to its own standard output and error, and exits
+ *  with the job's status.
+ *  @author Andrew Fang */
+public class Client {
+
+    /** Runs the job ARGS on the daemon. */
+    public static void main(String... args) {
+        Path socket = Path.of(System.getProperty("battleship.socket",
+                                                 Daemon.SOCKET));
+        int status;
+        try (SocketChannel daemon =
+             SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            daemon.connect(UnixDomainSocketAddress.of(socket));
+            DataOutputStream out =
+                new DataOutputStream(Channels.newOutputStream(daemon));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            status = copy(new DataInputStream(Channels.newInputStream(daemon)));
+        } catch (IOException e) {
+            System.err.println("Could not reach the daemon at " + socket
+                               + ": " + e.getMessage());
+            status = 1;
+        }
+        System.exit(status);
+    }
+
+    /** Copies the frames from IN to standard output and error until the
+     *  exit frame, and returns the status it holds. */
+    private static int copy(DataInputStream in) throws IOException {
+        byte[] buf = new byte[BUFSIZE];
+        try {
+            while (true) {
+                byte channel = in.readByte();
+                int len = in.readInt();
+                if (channel == Daemon.EXIT) {
+                    System.out.flush();
+                    return in.readInt();
+                }
+                if (len > buf.length) {
+                    buf = new byte[len];
+                }
+                in.readFully(buf, 0, len);
+                PrintStream dest = channel == Daemon.ERR ? System.err
+                    : System.out;
+                dest.write(buf, 0, len);
+                dest.flush();
+            }
+        } catch (EOFException e) {
+            System.err.println("The daemon hung up.");
+            return 1;
+        }
+    }
+
+    /** The initial size of the copy buffer. */
+    private static final int BUFSIZE = 1 << 12;
+}
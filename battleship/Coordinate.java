@@ -8,17 +8,26 @@ class Coordinate {
     
     /** A coordinate that stretches from (c0, r0) to (c1, r1). */
     Coordinate(String coord) {
-	String regex = "([A-Za-z])(\\d)-([A-Za-z])(\\d)";
+	String regex = "([A-Za-z]+)(\\d+)-([A-Za-z]+)(\\d+)";
 	Scanner inp = new Scanner(coord);
 	if (inp.hasNext(regex)) {
 	    MatchResult m = inp.match();
-	    _c0 = m.group(1).charAt(0) - CONVFACTOR;
-	    _r0 = Integer.parseInt(m.group(2));
-	    _c1 = m.group(3).charAt(0) - CONVFACTOR;
-	    _r1 = Integer.parseInt(m.group(4));
+	    _c0 = Move.column(m.group(1));
+	    _r0 = Move.row(m.group(2));
+	    _c1 = Move.column(m.group(3));
+	    _r1 = Move.row(m.group(4));
 	}
     }
 
+    /** A coordinate that stretches from column C0, row R0 to
+     *  column C1, row R1. */
+    Coordinate(int c0, int r0, int c1, int r1) {
+	_c0 = c0;
+	_r0 = r0;
+	_c1 = c1;
+	_r1 = r1;
+    }
+
     /** Ships can only be placed horizontally or vertically.*/
     boolean legal() {
 	return _c0 == _c1 || _r0 == _r1;
@@ -48,8 +57,6 @@ class Coordinate {
 	return _r1;
     }
 
-    /** Conversion factor from char to int. */
-    private static final int CONVFACTOR = 96;
     /** Column 0, 1, Row 0, 1. */
     private int _c0, _r0, _c1, _r1;
 }
\ No newline at end of file
@@ -0,0 +1,561 @@
+package battleship;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static battleship.Side.*;
+
+/** Plays a run of machine games across several worker JVMs on this
+ *  host, so that no one heap or garbage collector limits how many can
+ *  be played at once.  The run is a range of seeds: the game with seed S
+ *  is the one Main plays with --ai=2 --seed=S, played headless by
+ *  Game.playHeadless.
+ *
+ *  The coordinator launches the workers, which connect back to it on a
+ *  Unix domain socket.  The seeds are dealt out in equal shares, one per
+ *  worker, and a worker asks for them a chunk of CHUNK games at a time.
+ *  A worker whose share is used up steals the back half of the largest
+ *  share left, so a fast worker keeps busy while a slow one finishes, and
+ *  the chunk a worker was playing when it died goes back to its share
+ *  for the others to steal.
+ *
+ *  Results are merged a chunk at a time, as chunks finish.  After each,
+ *  the coordinator appends the chunk's results to the results file, if
+ *  any, and writes a checkpoint: the run, the totals so far, the seeds
+ *  played and the length of the results file.  A run resumed from its
+ *  checkpoint plays only the seeds not yet played, and first cuts the
+ *  results file back to its checkpointed length, dropping any results
+ *  appended after the last checkpoint.
+ *
+ *  The protocol: a worker sends its process id (long); the coordinator
+ *  sends the board size (int), strategy (UTF) and time limit (float).
+ *  Then the worker repeatedly sends NEXT and gets either STOP or RANGE
+ *  with the first seed and the seed past the last (longs), and sends
+ *  for each game of the chunk RESULT, the seed (long), the winner (byte,
+ *  a Side ordinal), the shots of each player (ints) and the mean turn
+ *  time in nanoseconds (long).  A NEXT after a chunk says it is done.
+ *  @author Andrew Fang */
+final class Coordinator {
+
+    /** A run of GAMES games with seeds SEED, SEED + 1, ..., on SIZExSIZE
+     *  boards, with machine players using STRATEGY and TIME minutes on
+     *  their clocks. */
+    Coordinator(long seed, long games, int size, Strategy strategy,
+                float time) {
+        _seed = seed;
+        _games = games;
+        _size = size;
+        _strategy = strategy;
+        _time = time;
+    }
+
+    /** Returns the run checkpointed in FILE, with its progress. */
+    static Coordinator resume(Path file) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file));
+        try {
+            if (buf.getInt() != MAGIC || buf.get() != VERSION) {
+                throw new IllegalArgumentException("not a run checkpoint");
+            }
+            Coordinator run =
+                new Coordinator(buf.getLong(), buf.getLong(), buf.getInt(),
+                                Strategy.values()[buf.get()], buf.getFloat());
+            run._resultsLength = buf.getLong();
+            run._played = buf.getLong();
+            run._wins[0] = buf.getLong();
+            run._wins[1] = buf.getLong();
+            run._shotsToWin = buf.getLong();
+            for (int i = buf.getInt(); i > 0; i--) {
+                run._done.put(buf.getLong(), buf.getLong());
+            }
+            return run;
+        } catch (BufferUnderflowException
+                 | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("truncated checkpoint");
+        }
+    }
+
+    /** Has this run write a checkpoint to FILE after every chunk. */
+    void setCheckpoint(Path file) {
+        _checkpoint = file;
+    }
+
+    /** Has this run append its results to FILE, which is first cut back
+     *  to its checkpointed length if this run was resumed. */
+    void setResults(Path file) throws IOException {
+        if (_resultsLength >= 0 && Files.exists(file)) {
+            try (FileChannel channel =
+                 FileChannel.open(file, StandardOpenOption.WRITE)) {
+                if (channel.size() > _resultsLength) {
+                    channel.truncate(_resultsLength);
+                }
+            }
+        }
+        _results = new ResultStore.Writer(file);
+        _resultsLength = _results.length();
+    }
+
+    /** Plays the games of this run not yet played on N worker JVMs.
+     *  Returns true iff they were all played. */
+    boolean run(int n) throws IOException {
+        deal(n);
+        Path socket = Path.of(System.getProperty("java.io.tmpdir"),
+                              "battleship-" + ProcessHandle.current().pid()
+                              + ".sock");
+        Files.deleteIfExists(socket);
+        Map<Long, Process> unconnected = new HashMap<>();
+        List<Process> workers = new ArrayList<>();
+        List<Thread> handlers = new ArrayList<>();
+        try (ServerSocketChannel server =
+             ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            server.configureBlocking(false);
+            for (int i = 0; i < n; i++) {
+                Process worker = launch(socket);
+                workers.add(worker);
+                unconnected.put(worker.pid(), worker);
+            }
+            while (unconnected.values().stream().anyMatch(Process::isAlive)) {
+                SocketChannel channel = server.accept();
+                if (channel == null) {
+                    Thread.sleep(POLL);
+                    continue;
+                }
+                DataInputStream in =
+                    new DataInputStream(Channels.newInputStream(channel));
+                unconnected.remove(in.readLong());
+                int slot = handlers.size();
+                Thread handler =
+                    new Thread(() -> serve(slot, channel, in),
+                               "worker-" + (slot + 1));
+                handler.start();
+                handlers.add(handler);
+            }
+            for (Thread handler : handlers) {
+                handler.join();
+            }
+            for (Process worker : workers) {
+                worker.waitFor();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Process worker : workers) {
+                worker.destroy();
+            }
+            Files.deleteIfExists(socket);
+            if (_results != null) {
+                _results.close();
+            }
+        }
+        return _played == _games;
+    }
+
+    /** Plays the chunks the worker of slot SLOT asks for on CHANNEL, from
+     *  which it has read IN, until there are none left or the worker is
+     *  lost. */
+    private void serve(int slot, SocketChannel channel, DataInputStream in) {
+        long[] chunk = null;
+        List<long[]> rows = new ArrayList<>();
+        try (channel) {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(_size);
+            out.writeUTF(_strategy.name());
+            out.writeFloat(_time);
+            out.flush();
+            while (true) {
+                byte msg = in.readByte();
+                if (msg == RESULT) {
+                    rows.add(new long[] {
+                        in.readLong(), in.readByte(), in.readInt(),
+                        in.readInt(), in.readLong()
+                    });
+                } else if (msg == NEXT) {
+                    if (chunk != null) {
+                        finish(chunk, rows);
+                        chunk = null;
+                        rows.clear();
+                    }
+                    chunk = take(slot);
+                    if (chunk == null) {
+                        out.writeByte(STOP);
+                        out.flush();
+                        return;
+                    }
+                    out.writeByte(RANGE);
+                    out.writeLong(chunk[0]);
+                    out.writeLong(chunk[1]);
+                    out.flush();
+                } else {
+                    throw new IOException("unknown message " + msg);
+                }
+            }
+        } catch (EOFException e) {
+            System.err.println("Worker " + (slot + 1) + " hung up.");
+        } catch (IOException e) {
+            System.err.println("Lost worker " + (slot + 1) + ": "
+                               + e.getMessage());
+        } finally {
+            if (chunk != null) {
+                abandon(slot, chunk);
+            }
+        }
+    }
+
+    /** Launches a worker JVM that will connect to SOCKET, running this
+     *  program with the options of this JVM that workers need, and
+     *  returns it. */
+    private static Process launch(Path socket) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command()
+                    .orElse("java"));
+        command.addAll(workerOptions(ManagementFactory.getRuntimeMXBean()
+                                     .getInputArguments()));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Main.class.getName());
+        command.add("--worker=" + socket);
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    /** Returns the options among ARGS, the options of a JVM, that its
+     *  workers should be started with: the modules added, the system
+     *  properties and the heap sizes.  Everything else (debugger agents,
+     *  log files, flight recordings and the like) belongs to the
+     *  coordinator alone, and would clash if every worker had it. */
+    static List<String> workerOptions(List<String> args) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            if (arg.equals("--add-modules") && i + 1 < args.size()) {
+                result.add(arg);
+                result.add(args.get(i + 1));
+                i += 1;
+            } else if (arg.startsWith("--add-modules=")
+                       || arg.startsWith("-D") || arg.startsWith("-Xmx")
+                       || arg.startsWith("-Xms")) {
+                result.add(arg);
+            }
+        }
+        return result;
+    }
+
+    /** Plays the chunks the coordinator listening on SOCKET hands out
+     *  until it has none left, as a worker.  Returns the exit status. */
+    static int work(Path socket) {
+        try (SocketChannel channel =
+             SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+            DataInputStream in =
+                new DataInputStream(Channels.newInputStream(channel));
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeLong(ProcessHandle.current().pid());
+            out.flush();
+            int size = in.readInt();
+            Strategy strategy = Strategy.valueOf(in.readUTF());
+            float time = in.readFloat();
+            while (true) {
+                out.writeByte(NEXT);
+                out.flush();
+                if (in.readByte() == STOP) {
+                    return 0;
+                }
+                long first = in.readLong(), end = in.readLong();
+                for (long seed = first; seed < end; seed++) {
+                    Game game = new Game(0, seed, time, size, 0);
+                    game.setStrategy(strategy);
+                    Side winner = game.playHeadless();
+                    out.writeByte(RESULT);
+                    out.writeLong(seed);
+                    out.writeByte(winner.ordinal());
+                    out.writeInt(game.player(PLAYER1).enemyBoard()
+                                 .shotsTaken());
+                    out.writeInt(game.player(PLAYER2).enemyBoard()
+                                 .shotsTaken());
+                    out.writeLong(game.meanTurnNanos());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Lost the coordinator at " + socket + ": "
+                               + e.getMessage());
+            return 1;
+        }
+    }
+
+    /** Deals the seeds not yet played into N equal shares, in order. */
+    private synchronized void deal(int n) {
+        List<long[]> left = new ArrayList<>();
+        long from = _seed, total = 0;
+        for (Map.Entry<Long, Long> e : _done.entrySet()) {
+            if (from < e.getKey()) {
+                left.add(new long[] { from, e.getKey() });
+                total += e.getKey() - from;
+            }
+            from = e.getValue();
+        }
+        if (from < _seed + _games) {
+            left.add(new long[] { from, _seed + _games });
+            total += _seed + _games - from;
+        }
+        _shares.clear();
+        int r = 0;
+        for (int i = 0; i < n; i++) {
+            Deque<long[]> share = new ArrayDeque<>();
+            long quota = total * (i + 1) / n - total * i / n;
+            while (quota > 0) {
+                long[] range = left.get(r);
+                long end = Math.min(range[1], range[0] + quota);
+                share.addLast(new long[] { range[0], end });
+                quota -= end - range[0];
+                range[0] = end;
+                if (range[0] == range[1]) {
+                    r += 1;
+                }
+            }
+            _shares.add(share);
+        }
+    }
+
+    /** Returns the next chunk for the worker of slot SLOT, as its first
+     *  seed and the seed past its last, stealing if its share is used
+     *  up, or null if there are no more.  Waits while the only games
+     *  left are being played by others, who may yet give them back. */
+    private synchronized long[] take(int slot) {
+        Deque<long[]> share = _shares.get(slot);
+        while (!_failed) {
+            if (share.isEmpty()) {
+                steal(share);
+            }
+            if (!share.isEmpty()) {
+                long[] range = share.peekFirst();
+                long[] chunk = { range[0], Math.min(range[1],
+                                                    range[0] + CHUNK) };
+                range[0] = chunk[1];
+                if (range[0] == range[1]) {
+                    share.pollFirst();
+                }
+                _playing += 1;
+                return chunk;
+            }
+            if (_playing == 0) {
+                break;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return null;
+    }
+
+    /** Moves the back half of the largest share into SHARE, which is
+     *  empty. */
+    private void steal(Deque<long[]> share) {
+        Deque<long[]> victim = null;
+        long most = 0;
+        for (Deque<long[]> s : _shares) {
+            long count = 0;
+            for (long[] range : s) {
+                count += range[1] - range[0];
+            }
+            if (count > most) {
+                most = count;
+                victim = s;
+            }
+        }
+        for (long half = (most + 1) / 2; half > 0;) {
+            long[] range = victim.peekLast();
+            if (range[1] - range[0] <= half) {
+                share.addFirst(victim.pollLast());
+                half -= range[1] - range[0];
+            } else {
+                share.addFirst(new long[] { range[1] - half, range[1] });
+                range[1] -= half;
+                half = 0;
+            }
+        }
+    }
+
+    /** Returns CHUNK, which a lost worker of slot SLOT was playing, to
+     *  the front of its share. */
+    private synchronized void abandon(int slot, long[] chunk) {
+        _shares.get(slot).addFirst(chunk);
+        _playing -= 1;
+        notifyAll();
+    }
+
+    /** Merges ROWS, the results of the games of CHUNK, into the totals
+     *  and the results file, and writes a checkpoint.  Throws an
+     *  IOException, leaving everything as it was, if ROWS are not the
+     *  results of CHUNK. */
+    private synchronized void finish(long[] chunk, List<long[]> rows)
+        throws IOException {
+        if (rows.size() != chunk[1] - chunk[0]) {
+            throw new IOException("chunk " + chunk[0] + "-" + (chunk[1] - 1)
+                                  + " came back with " + rows.size()
+                                  + " results");
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.get(i)[0] != chunk[0] + i) {
+                throw new IOException("result for seed " + rows.get(i)[0]
+                                      + " out of place");
+            }
+        }
+        _playing -= 1;
+        for (long[] row : rows) {
+            int winner = (int) row[1];
+            _played += 1;
+            _wins[winner] += 1;
+            _shotsToWin += row[2 + winner];
+        }
+        markDone(chunk[0], chunk[1]);
+        try {
+            if (_results != null) {
+                for (long[] row : rows) {
+                    _results.append(row[0], 0, _strategy, _strategy, _size,
+                                    Side.values()[(int) row[1]],
+                                    (int) row[2], (int) row[3], row[4]);
+                }
+                _results.flush();
+                _resultsLength = _results.length();
+            }
+            checkpoint();
+        } catch (IOException e) {
+            System.err.println("Could not save progress: " + e.getMessage());
+            _failed = true;
+        }
+        notifyAll();
+    }
+
+    /** Records the seeds FIRST up to END as played, merging them with
+     *  the ranges played next to them. */
+    private void markDone(long first, long end) {
+        Map.Entry<Long, Long> before = _done.floorEntry(first);
+        if (before != null && before.getValue() == first) {
+            first = before.getKey();
+            _done.remove(first);
+        }
+        Long after = _done.remove(end);
+        _done.put(first, after == null ? end : after);
+    }
+
+    /** Writes the progress of this run to its checkpoint file, if it has
+     *  one, replacing the file in one step. */
+    private void checkpoint() throws IOException {
+        if (_checkpoint == null) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(_seed);
+        out.writeLong(_games);
+        out.writeInt(_size);
+        out.writeByte(_strategy.ordinal());
+        out.writeFloat(_time);
+        out.writeLong(_results == null ? -1 : _resultsLength);
+        out.writeLong(_played);
+        out.writeLong(_wins[0]);
+        out.writeLong(_wins[1]);
+        out.writeLong(_shotsToWin);
+        out.writeInt(_done.size());
+        for (Map.Entry<Long, Long> e : _done.entrySet()) {
+            out.writeLong(e.getKey());
+            out.writeLong(e.getValue());
+        }
+        Path tmp = _checkpoint.resolveSibling(_checkpoint.getFileName()
+                                              + ".tmp");
+        Files.write(tmp, bytes.toByteArray());
+        Files.move(tmp, _checkpoint, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Returns the number of games played so far. */
+    synchronized long played() {
+        return _played;
+    }
+
+    /** Returns a summary of the results of the games played so far. */
+    synchronized String summary() {
+        return String.format("%d games: %s won %d, %s won %d,"
+                             + " %.2f shots to win on average", _played,
+                             PLAYER1, _wins[0], PLAYER2, _wins[1],
+                             _played == 0 ? 0.0
+                             : (double) _shotsToWin / _played);
+    }
+
+    /** The most workers in a run. */
+    static final int MAXWORKERS = 64;
+    /** The games in a chunk. */
+    static final int CHUNK = 16;
+    /** Messages. */
+    static final byte NEXT = 1, RANGE = 2, RESULT = 3, STOP = 4;
+    /** Milliseconds between checks for workers connecting. */
+    private static final long POLL = 10;
+    /** Identifies a run checkpoint: "BSCO". */
+    static final int MAGIC = 0x4253434F;
+    /** The format of run checkpoints. */
+    static final byte VERSION = 1;
+
+    /** The first seed. */
+    private final long _seed;
+    /** The number of games. */
+    private final long _games;
+    /** The length of a side of the boards. */
+    private final int _size;
+    /** The way the machine players choose their shots. */
+    private final Strategy _strategy;
+    /** The time limit of each player, in minutes. */
+    private final float _time;
+    /** By worker, the seeds left to it, as ranges of first seed and seed
+     *  past the last, in order. */
+    private final List<Deque<long[]>> _shares = new ArrayList<>();
+    /** The seeds played, as ranges from first seed to seed past the
+     *  last, none touching. */
+    private final TreeMap<Long, Long> _done = new TreeMap<>();
+    /** The number of chunks being played. */
+    private int _playing;
+    /** True iff progress could not be saved, which stops the run. */
+    private boolean _failed;
+    /** The number of games played. */
+    private long _played;
+    /** By side, the games won. */
+    private final long[] _wins = new long[2];
+    /** The total shots taken by the winners. */
+    private long _shotsToWin;
+    /** Where to write a checkpoint after each chunk, or null. */
+    private Path _checkpoint;
+    /** Where to append the results, or null. */
+    private ResultStore.Writer _results;
+    /** The length of the results file at the last checkpoint, or -1 if
+     *  there is none. */
+    private long _resultsLength = -1;
+}
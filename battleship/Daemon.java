@@ -0,0 +1,204 @@
+package battleship;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** A resident server that plays jobs sent by Client, so that the cost of
+ *  starting a JVM, loading classes and warming up the JIT is paid once
+ *  rather than per game.  It listens on a Unix domain socket.  A job is
+ *  the arguments Main accepts; it runs on its own thread, as Main would
+ *  run it, except that games needing a human are refused.
+ *
+ *  Everything a job prints is sent back to its client as it is printed:
+ *  System.out and System.err are replaced by streams that route each
+ *  thread's output to the connection of the job it runs.  A thread
+ *  started by a job runs that job too, as do the threads those start,
+ *  so output from a job's spectators thread, Melee executor, metrics
+ *  reporter or fork/join pool reaches its client.  Once a job ends, a
+ *  thread it started that is still alive (such as a worker of the
+ *  common fork/join pool) writes to the daemon's own streams.  The
+ *  protocol:
+ *  the client sends the number of arguments (int) and the arguments
+ *  (modified UTF-8, as DataOutputStream.writeUTF); the daemon sends
+ *  frames of a channel byte (OUT, ERR or EXIT) and an int length and that
+ *  many bytes, the EXIT frame holding the job's exit status as an int.
+ *  @author Andrew Fang */
+final class Daemon {
+
+    /** Not instantiated. */
+    private Daemon() {
+    }
+
+    /** Serves jobs on the Unix domain socket at SOCKET until the process
+     *  is killed.  Returns an exit status if it cannot. */
+    static int serve(Path socket) {
+        ServerSocketChannel server;
+        try {
+            Files.deleteIfExists(socket);
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            System.err.println("Could not listen on " + socket + ": "
+                               + e.getMessage());
+            return 1;
+        }
+        socket.toFile().deleteOnExit();
+        System.setOut(new PrintStream(new Router(System.out, OUT), true));
+        System.setErr(new PrintStream(new Router(System.err, ERR), true));
+        System.err.println("Listening on " + socket);
+        while (true) {
+            try {
+                SocketChannel client = server.accept();
+                Thread job = new Thread(() -> runJob(client),
+                                        "job-" + (_jobs += 1));
+                job.start();
+            } catch (IOException e) {
+                System.err.println("Could not accept a job: "
+                                   + e.getMessage());
+                return 1;
+            }
+        }
+    }
+
+    /** Reads a job from CLIENT, runs it, and sends back its output and
+     *  exit status. */
+    private static void runJob(SocketChannel client) {
+        try (client) {
+            DataInputStream in =
+                new DataInputStream(Channels.newInputStream(client));
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(client)));
+            String[] args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = in.readUTF();
+            }
+            Route route = new Route(out);
+            ROUTE.set(route);
+            int status;
+            try {
+                status = Main.run(false, args);
+            } catch (RuntimeException e) {
+                System.err.println("Job failed: " + e);
+                status = 1;
+            } finally {
+                System.out.flush();
+                System.err.flush();
+                ROUTE.remove();
+            }
+            route.exit(status);
+        } catch (IOException e) {
+            ROUTE.remove();
+        }
+    }
+
+    /** The connection of a job to its client, while the job runs. */
+    private static class Route {
+
+        /** The route of a job whose client reads from OUT. */
+        Route(DataOutputStream out) {
+            _out = out;
+        }
+
+        /** Sends LEN bytes of B from OFF as a frame of CHANNEL, and
+         *  returns true, or returns false if the job has ended. */
+        synchronized boolean send(byte channel, byte[] b, int off, int len)
+            throws IOException {
+            if (_ended) {
+                return false;
+            }
+            _out.writeByte(channel);
+            _out.writeInt(len);
+            _out.write(b, off, len);
+            return true;
+        }
+
+        /** Flushes the frames sent, and returns true, or returns false
+         *  if the job has ended. */
+        synchronized boolean flush() throws IOException {
+            if (_ended) {
+                return false;
+            }
+            _out.flush();
+            return true;
+        }
+
+        /** Ends the job with exit status STATUS, after which nothing
+         *  more is sent. */
+        synchronized void exit(int status) throws IOException {
+            _ended = true;
+            _out.writeByte(EXIT);
+            _out.writeInt(Integer.BYTES);
+            _out.writeInt(status);
+            _out.flush();
+        }
+
+        /** The stream to the client. */
+        private final DataOutputStream _out;
+        /** True once the job has ended. */
+        private boolean _ended;
+    }
+
+    /** An output stream that sends what each thread writes as frames of
+     *  one channel to that thread's job, or to a default stream if the
+     *  thread runs no job. */
+    private static class Router extends OutputStream {
+
+        /** A Router for frames of CHANNEL, writing to DEFAULTOUT for
+         *  threads without a job. */
+        Router(OutputStream defaultOut, byte channel) {
+            _default = defaultOut;
+            _channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            Route route = ROUTE.get();
+            if (route == null || !route.send(_channel, b, off, len)) {
+                _default.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            Route route = ROUTE.get();
+            if (route == null || !route.flush()) {
+                _default.flush();
+            }
+        }
+
+        /** Where threads without a job write. */
+        private final OutputStream _default;
+        /** The channel of the frames written. */
+        private final byte _channel;
+    }
+
+    /** Frame channels. */
+    static final byte OUT = 1, ERR = 2, EXIT = 3;
+
+    /** The path of the socket Client uses unless told otherwise. */
+    static final String SOCKET = "/tmp/battleship.sock";
+
+    /** The route of the job each thread runs, if any, which the threads
+     *  it starts inherit. */
+    private static final InheritableThreadLocal<Route> ROUTE =
+        new InheritableThreadLocal<>();
+
+    /** The number of jobs accepted. */
+    private static int _jobs;
+}
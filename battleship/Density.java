@@ -0,0 +1,266 @@
+package battleship;
+
+import java.util.Arrays;
+
+import static battleship.Piece.*;
+
+/** The density map of a target board: for each square not yet shot at,
+ *  the weighted number of ways the remaining ships could lie across it
+ *  without covering a miss, as MachinePlayer uses to choose its shots.
+ *  Each placement counts 1, plus MachinePlayer.HITWEIGHT for each hit it
+ *  covers.
+ *
+ *  The work is done by two data-parallel kernels over rows of the board:
+ *  one adds the placements running down the board, given the board and
+ *  its transpose, and one finds the greatest density.  This class has the
+ *  plain loops; create returns a VectorDensity, which uses the Vector API,
+ *  when that is available.  Both give identical results.
+ *
+ *  A Density may also hold a batch of boards, stacked one above the next
+ *  with a row of blocked, shot squares between each two, so that a
+ *  single pass of the kernels fills in the maps of every board at once:
+ *  no placement can span the blocked row, and it takes no density.
+ *  @author Andrew Fang */
+class Density {
+
+    /** Returns a new Density for NxN boards, using SIMD kernels if the
+     *  jdk.incubator.vector module is present and the system property
+     *  battleship.scalar is not "true". */
+    static Density create(int n) {
+        return create(n, 1);
+    }
+
+    /** Returns a new Density for a batch of up to BOARDS NxN boards, using
+     *  SIMD kernels as for create(N). */
+    static Density create(int n, int boards) {
+        if (VECTOR) {
+            try {
+                return (Density) Class.forName("battleship.VectorDensity")
+                    .getDeclaredConstructor(int.class, int.class)
+                    .newInstance(n, boards);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return new Density(n, n, boards);
+            }
+        }
+        return new Density(n, n, boards);
+    }
+
+    /** A Density for NxN boards that uses scalar loops. */
+    Density(int n) {
+        this(n, n, 1);
+    }
+
+    /** A Density for a batch of up to BOARDS NxN boards whose kernels see
+     *  each row of a board padded out to STRIDE >= N squares with
+     *  blocked, shot squares. */
+    protected Density(int n, int stride, int boards) {
+        _n = n;
+        _stride = stride;
+        _capacity = boards;
+        int cells = (boards * (n + 1) - 1) * stride;
+        _miss = new int[cells];
+        _hits = new int[cells];
+        _open = new int[cells];
+        _missT = new int[cells];
+        _hitsT = new int[cells];
+        _openT = new int[cells];
+        _down = new int[cells];
+        _across = new int[cells];
+        _values = new int[cells];
+        Arrays.fill(_miss, 1);
+        Arrays.fill(_missT, 1);
+        setBoards(boards);
+    }
+
+    /** Returns the length of a side of the boards. */
+    int size() {
+        return _n;
+    }
+
+    /** Has the kernels work on only the first COUNT boards of the
+     *  batch. */
+    void setBoards(int count) {
+        assert count > 0 && count <= _capacity;
+        _boards = count;
+        _rows = count * (_n + 1) - 1;
+        _summed = false;
+    }
+
+    /** Sets the board to BOARD and clears the map. */
+    void load(ReadOnlyBoard board) {
+        for (int r = 0; r < _n; r++) {
+            for (int c = 0; c < _n; c++) {
+                Piece p = board.get(c + 1, r + 1);
+                set(0, r, c, p == MISS ? 1 : 0, p == HIT ? 1 : 0,
+                    p == UNKNOWN ? 1 : 0);
+            }
+        }
+        clear();
+    }
+
+    /** Sets the board to the NxN squares starting at BASE in KNOWN, in
+     *  rows, coded as BatchSim.UNKNOWN, MISS and HIT, and clears the
+     *  map. */
+    void load(byte[] known, int base) {
+        load(0, known, base);
+        clear();
+    }
+
+    /** Sets board B of the batch to the NxN squares starting at BASE in
+     *  KNOWN, coded as for load(KNOWN, BASE), leaving the map as it is. */
+    void load(int b, byte[] known, int base) {
+        for (int r = 0; r < _n; r++) {
+            for (int c = 0; c < _n; c++) {
+                byte p = known[base + r * _n + c];
+                set(b, r, c, p == BatchSim.MISS ? 1 : 0,
+                    p == BatchSim.HIT ? 1 : 0,
+                    p == BatchSim.UNKNOWN ? 1 : 0);
+            }
+        }
+    }
+
+    /** Records the square at row R, column C of board B as a miss iff
+     *  MISS is 1, a hit iff HIT is 1 and not yet shot at iff OPEN is 1. */
+    private void set(int b, int r, int c, int miss, int hit, int open) {
+        int base = offset(b);
+        int k = base + r * _stride + c, t = base + c * _stride + r;
+        _miss[k] = _missT[t] = miss;
+        _hits[k] = _hitsT[t] = hit * MachinePlayer.HITWEIGHT;
+        _open[k] = _openT[t] = open;
+    }
+
+    /** Returns the index in the kernels' arrays of the first square of
+     *  board B. */
+    private int offset(int b) {
+        return b * (_n + 1) * _stride;
+    }
+
+    /** Clears the maps. */
+    void clear() {
+        Arrays.fill(_down, 0, _rows * _stride, 0);
+        Arrays.fill(_across, 0, _rows * _stride, 0);
+        _summed = false;
+    }
+
+    /** Adds the placements of a ship of length LEN to the maps, and
+     *  returns how many there were, on all the boards together. */
+    int add(int len) {
+        _summed = false;
+        return addRows(_miss, _hits, _open, len, _down)
+            + addRows(_missT, _hitsT, _openT, len, _across);
+    }
+
+    /** Returns the density of the square at COL, ROW, numbered from 1. */
+    int get(int col, int row) {
+        return _down[(row - 1) * _stride + col - 1]
+            + _across[(col - 1) * _stride + row - 1];
+    }
+
+    /** Copies the densities of all the squares, in rows, into DEST
+     *  starting at BASE. */
+    void copyValues(int[] dest, int base) {
+        copyValues(0, dest, base);
+    }
+
+    /** Copies the densities of the squares of board B, in rows, into
+     *  DEST starting at BASE. */
+    void copyValues(int b, int[] dest, int base) {
+        sum();
+        int from = offset(b);
+        for (int r = 0; r < _n; r++) {
+            System.arraycopy(_values, from + r * _stride, dest,
+                             base + r * _n, _n);
+        }
+    }
+
+    /** Returns the greatest density of a square not yet shot at, on any
+     *  of the boards, or -1 if there is none. */
+    int max() {
+        sum();
+        return max(_values, _open);
+    }
+
+    /** Brings _values up to date. */
+    private void sum() {
+        if (!_summed) {
+            for (int b = 0; b < _boards; b++) {
+                int base = offset(b);
+                for (int r = 0; r < _n; r++) {
+                    for (int c = 0; c < _n; c++) {
+                        _values[base + r * _stride + c] =
+                            _down[base + r * _stride + c]
+                            + _across[base + c * _stride + r];
+                    }
+                }
+            }
+            _summed = true;
+        }
+    }
+
+    /** Kernel: adds to OUT the placements of a ship of length LEN running
+     *  down the _rows rows, _stride apart, of the batch, whose squares are 1 in
+     *  MISS where there are misses, hold HITWEIGHT in HITS where there are
+     *  hits and are 1 in OPEN where not yet shot at.  Returns the number
+     *  of placements. */
+    int addRows(int[] miss, int[] hits, int[] open, int len, int[] out) {
+        int n = _n, stride = _stride;
+        int count = 0;
+        for (int r = 0; r + len <= _rows; r++) {
+            for (int c = 0; c < n; c++) {
+                int blocked = 0, weight = 1;
+                for (int k = 0; k < len; k++) {
+                    blocked |= miss[(r + k) * stride + c];
+                    weight += hits[(r + k) * stride + c];
+                }
+                if (blocked == 0) {
+                    count += 1;
+                    for (int k = 0; k < len; k++) {
+                        int at = (r + k) * stride + c;
+                        out[at] += weight * open[at];
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /** Kernel: returns the greatest of VALUES where OPEN is 1, or -1 if
+     *  OPEN is all 0. */
+    int max(int[] values, int[] open) {
+        int best = -1;
+        for (int k = 0; k < _rows * _stride; k++) {
+            if (open[k] == 1 && values[k] > best) {
+                best = values[k];
+            }
+        }
+        return best;
+    }
+
+    /** True iff create may try the SIMD kernels. */
+    private static final boolean VECTOR =
+        !Boolean.getBoolean("battleship.scalar")
+        && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    /** The length of a side of the board. */
+    protected final int _n;
+    /** The distance between rows in the kernels' arrays. */
+    protected final int _stride;
+    /** The number of boards there is room for. */
+    private final int _capacity;
+    /** The number of boards the kernels work on. */
+    private int _boards;
+    /** The number of rows the kernels work on: those of _boards boards
+     *  and the blocked rows between them. */
+    protected int _rows;
+    /** The boards, in rows: misses, weights of hits and open squares. */
+    protected final int[] _miss, _hits, _open;
+    /** The same, transposed. */
+    protected final int[] _missT, _hitsT, _openT;
+    /** The densities of placements running down the board, and of those
+     *  running across it (transposed). */
+    private final int[] _down, _across;
+    /** The total densities, in rows. */
+    private final int[] _values;
+    /** True iff _values is up to date. */
+    private boolean _summed;
+}
@@ -0,0 +1,69 @@
+package battleship;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/** Times the scalar and SIMD Density kernels against each other on
+ *  partly played 10x10 and 26x26 boards, and checks that they agree.
+ *  Run with --add-modules jdk.incubator.vector to include the SIMD ones.
+ *  @author Andrew Fang */
+class DensityBench {
+
+    /** Runs the benchmark.  IGNORED is ignored. */
+    public static void main(String... ignored) {
+        for (int n : new int[] { 10, 26 }) {
+            byte[] known = randomBoard(n, new Random(n));
+            Density scalar = new Density(n);
+            Density simd = Density.create(n);
+            if (simd.getClass() == Density.class) {
+                System.out.println("Vector API not available.");
+            }
+            for (int round = 0; round < 3; round++) {
+                long a = time(scalar, known);
+                long b = time(simd, known);
+                System.out.printf("%dx%d: scalar %d ns, %s %d ns%n", n, n,
+                                  a / ROUNDS, simd.getClass().getSimpleName(),
+                                  b / ROUNDS);
+            }
+            int[] x = new int[n * n], y = new int[n * n];
+            scalar.copyValues(x, 0);
+            simd.copyValues(y, 0);
+            if (!Arrays.equals(x, y) || scalar.max() != simd.max()) {
+                System.out.println("Kernels disagree.");
+            }
+        }
+    }
+
+    /** Returns the time in nanoseconds D takes to build the density map
+     *  of KNOWN, an NxN board, ROUNDS times. */
+    private static long time(Density d, byte[] known) {
+        long start = System.nanoTime();
+        int sink = 0;
+        for (int k = 0; k < ROUNDS; k++) {
+            d.load(known, 0);
+            for (Shipname ship : MachinePlayer.FLEET) {
+                sink += d.add(ship.size());
+            }
+            sink += d.max();
+        }
+        if (sink == 0) {
+            System.out.println();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /** Returns an NxN board, coded as for BatchSim, with about a fifth of
+     *  its squares shot at, using RAND. */
+    private static byte[] randomBoard(int n, Random rand) {
+        byte[] known = new byte[n * n];
+        for (int k = 0; k < known.length; k++) {
+            int x = rand.nextInt(10);
+            known[k] = x == 0 ? BatchSim.HIT
+                : x == 1 ? BatchSim.MISS : BatchSim.UNKNOWN;
+        }
+        return known;
+    }
+
+    /** The number of maps built per timing. */
+    private static final int ROUNDS = 20000;
+}
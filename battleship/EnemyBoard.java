@@ -1,12 +1,12 @@
 package battleship;
 
-import java.util.LinkedList;
+import java.util.EnumSet;
 
 import static battleship.Piece.*;
 import static battleship.Shipname.*;
 
 /** A board that belongs to yourself. */
-class EnemyBoard {
+class EnemyBoard extends Board {
 
     /** The EnemyBoard is NxN, assuming N is less than 26.
      *  Keeps board B as a reference to what the enemy's board looks like. */
@@ -14,9 +14,21 @@ class EnemyBoard {
 	_enemy = b.getConfig();
 	_config = new Piece[n][n];
 	_size = n;
+	int words = (n * n + Long.SIZE - 1) / Long.SIZE;
+	_log = new int[n * n];
+	_shotBits = new long[words];
+	_fleetBits = new long[words];
+	_shipBits = new long[Shipname.values().length][words];
 	for (int x = 0; x < n; x++) {
 	    for (int y = 0; y < n; y++) {
 		_config[x][y] = UNKNOWN;
+		if (_enemy[x][y] != EMPTY) {
+		    int k = x * n + y;
+		    _shipCells += 1;
+		    _afloat[_enemy[x][y].ordinal()] += 1;
+		    _fleetBits[k / Long.SIZE] |= 1L << k;
+		    _shipBits[_enemy[x][y].ordinal()][k / Long.SIZE] |= 1L << k;
+		}
 	    }
 	}
     }
@@ -26,50 +38,149 @@ class EnemyBoard {
 	this(10, b);
     }
 
-    /** Return true iff MOVE is legal. */
-    boolean isLegal(Move move) {
-        if (move == null) {
-            return false;
-        } else if (!isFree(move)) {
-            return false;
-        }
-        return true;
-    }
-
-    /** Returns true if the move M is on a spot not yet searched. */
-    boolean isFree(Move m) {
+    @Override
+    public boolean isFree(Move m) {
         int x = m.getCol();
         int y = m.getRow();
-        return _config[x - 1][y - 1] == UNKNOWN;
+        return _config[y - 1][x - 1] == UNKNOWN;
     }
 
-    /** Return a list of all legal moves. */
-    LinkedList<Move> legalMoves() {
-        LinkedList<Move> movelist = new LinkedList<Move>();
-        for (int x = 1; x < _size; x++) {
-            for (int y = 1; y < _size; y++) {
-		Move m = Move.create(x, y);
-		if (isLegal(m)) {
-		    movelist.add(m);
-		}
-	    }
-        }
-        return movelist;
+    @Override
+    public Piece get(int col, int row) {
+	return _config[row - 1][col - 1];
     }
 
-    /** Makes a move. */
+    @Override
     void makeMove(Move m) {
+	long start = Histogram.start();
 	if (isLegal(m)) {
-	    int x = m.getCol();
-	    int y = m.getRow();
-	    if (_enemy[x - 1][y - 1] == EMPTY) {
-		_config[x - 1][y - 1] = MISS;
-	    } else {
-		_config[x - 1][y - 1] = HIT;
+	    Metrics.SHOTS.incrementAndGet();
+	    Shipname ship = mark(m.getCol(), m.getRow());
+	    if (ship != EMPTY) {
+		Metrics.HITS.incrementAndGet();
+		if (sunk(ship)) {
+		    Metrics.SINKS.incrementAndGet();
+		}
 	    }
 	} else {
 	    System.out.println("Illegal Move");
 	}
+	Metrics.MAKEMOVE.recordSince(start);
+    }
+
+    /** Records a shot at the free square COL, ROW, and returns what was
+     *  there. */
+    Shipname mark(int col, int row) {
+	int k = (row - 1) * _size + col - 1;
+	_log[_shots] = k;
+	_shots += 1;
+	_shotBits[k / Long.SIZE] |= 1L << k;
+	Shipname ship = _enemy[row - 1][col - 1];
+	if (ship == EMPTY) {
+	    _config[row - 1][col - 1] = MISS;
+	} else {
+	    _config[row - 1][col - 1] = HIT;
+	    _hits += 1;
+	    _afloat[ship.ordinal()] -= 1;
+	}
+	return ship;
+    }
+
+    /** Fires all of SHOTS at once, as a salvo, and returns what they
+     *  hit.  The shots are gathered into a mask of the board, which is
+     *  tested against the masks of the fleet and of each ship a word at
+     *  a time.  If any of SHOTS is illegal or repeated, fires none of them
+     *  and returns null. */
+    Salvo fire(Move... shots) {
+	long start = Histogram.start();
+	long[] volley = new long[_shotBits.length];
+	for (Move m : shots) {
+	    if (m == null || m.getCol() < 1 || m.getCol() > _size
+		|| m.getRow() < 1 || m.getRow() > _size) {
+		System.out.println("Illegal Move");
+		return null;
+	    }
+	    int k = (m.getRow() - 1) * _size + m.getCol() - 1;
+	    if (((volley[k / Long.SIZE] | _shotBits[k / Long.SIZE])
+		 & 1L << k) != 0) {
+		System.out.println("Illegal Move");
+		return null;
+	    }
+	    volley[k / Long.SIZE] |= 1L << k;
+	}
+	long[] hits = new long[volley.length];
+	long[] misses = new long[volley.length];
+	int hitCount = 0;
+	for (int w = 0; w < volley.length; w++) {
+	    hits[w] = volley[w] & _fleetBits[w];
+	    misses[w] = volley[w] & ~_fleetBits[w];
+	    _shotBits[w] |= volley[w];
+	    hitCount += Long.bitCount(hits[w]);
+	}
+	EnumSet<Shipname> sunk = EnumSet.noneOf(Shipname.class);
+	for (Shipname ship : MachinePlayer.FLEET) {
+	    long[] bits = _shipBits[ship.ordinal()];
+	    int struck = 0;
+	    for (int w = 0; w < volley.length; w++) {
+		struck += Long.bitCount(hits[w] & bits[w]);
+	    }
+	    if (struck > 0) {
+		_afloat[ship.ordinal()] -= struck;
+		if (_afloat[ship.ordinal()] == 0) {
+		    sunk.add(ship);
+		}
+	    }
+	}
+	for (Move m : shots) {
+	    int k = (m.getRow() - 1) * _size + m.getCol() - 1;
+	    _config[m.getRow() - 1][m.getCol() - 1] =
+		(hits[k / Long.SIZE] & 1L << k) != 0 ? HIT : MISS;
+	    _log[_shots] = k;
+	    _shots += 1;
+	}
+	_hits += hitCount;
+	Metrics.SHOTS.addAndGet(shots.length);
+	Metrics.HITS.addAndGet(hitCount);
+	Metrics.SINKS.addAndGet(sunk.size());
+	Metrics.MAKEMOVE.recordSince(start);
+	return new Salvo(_size, hits, misses, sunk);
+    }
+
+    /** Undoes the last shot taken, which there must be.  Every shot is
+     *  kept in a log of square numbers made with the board, so undoing
+     *  one takes constant time and allocates nothing, and a search can
+     *  shoot and retract as deep as it likes without copying the
+     *  board. */
+    void retract() {
+	_shots -= 1;
+	int k = _log[_shots];
+	int row = k / _size, col = k % _size;
+	_config[row][col] = UNKNOWN;
+	_shotBits[k / Long.SIZE] &= ~(1L << k);
+	Shipname ship = _enemy[row][col];
+	if (ship != EMPTY) {
+	    _hits -= 1;
+	    _afloat[ship.ordinal()] += 1;
+	}
+    }
+
+    /** Undoes shots until only SHOTS have been taken, as when a search
+     *  returns to a position in which shotsTaken() was SHOTS. */
+    void retractTo(int shots) {
+	while (_shots > shots) {
+	    retract();
+	}
+    }
+
+    /** Returns the number of ships not yet sunk. */
+    int shipsAfloat() {
+	int afloat = 0;
+	for (Shipname ship : MachinePlayer.FLEET) {
+	    if (_afloat[ship.ordinal()] > 0) {
+		afloat += 1;
+	    }
+	}
+	return afloat;
     }
 
     @Override
@@ -94,16 +205,93 @@ class EnemyBoard {
     }
 
 
+    /** Returns the last square shot at, or null if there has been no
+     *  shot. */
+    Move lastShot() {
+	return _shots == 0 ? null : shot(_shots - 1);
+    }
+
+    /** Returns true iff the last shot sank a ship. */
+    boolean lastSank() {
+	return _shots > 0 && sank(_shots - 1);
+    }
+
+    /** Returns the square of shot I, counting from 0 in the order fired,
+     *  which must have been taken.  The shots of a salvo are in the order
+     *  given to fire. */
+    Move shot(int i) {
+	int k = _log[i];
+	return Move.create(k % _size + 1, k / _size + 1);
+    }
+
+    /** Returns true iff shot I, which must have been taken, sank a ship:
+     *  that is, hit the ship's last square not yet shot at. */
+    boolean sank(int i) {
+	int k = _log[i];
+	Shipname ship = _enemy[k / _size][k % _size];
+	if (ship == EMPTY || !sunk(ship)) {
+	    return false;
+	}
+	for (int j = i + 1; j < _shots; j++) {
+	    if (_enemy[_log[j] / _size][_log[j] % _size] == ship) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
     /** Returns the current configuration of the board. */
     public Piece[][] getConfig() {
         return _config;
     }
 
+    @Override
+    public int size() {
+	return _size;
+    }
+
+    @Override
+    public int shotsTaken() {
+	return _shots;
+    }
+
+    @Override
+    public int hits() {
+	return _hits;
+    }
+
+    @Override
+    public boolean sunk(Shipname ship) {
+	return _afloat[ship.ordinal()] == 0;
+    }
+
+    @Override
+    public boolean allSunk() {
+	return _hits == _shipCells;
+    }
+
     /** The configuration of what is discovered on the enemy's board. */
     private Piece[][] _config;
     /** The configuration of the enemy's board. */
     private Shipname[][] _enemy;
     /** The size of the board. */
     private int _size;
+    /** The number of ship squares on the enemy's board. */
+    private int _shipCells;
+    /** The number of shots taken so far. */
+    private int _shots;
+    /** The number of ship squares hit so far. */
+    private int _hits;
+    /** The number of squares not yet hit of each ship, by ordinal. */
+    private int[] _afloat = new int[Shipname.values().length];
+    /** The squares shot at, a bit a square, row by row. */
+    private long[] _shotBits;
+    /** The squares holding ships, as _shotBits. */
+    private long[] _fleetBits;
+    /** By ship ordinal, the squares it holds, as _shotBits. */
+    private long[][] _shipBits;
+    /** The squares shot at, numbered row by row from 0, in the order
+     *  they were shot at; the first _shots are in use. */
+    private int[] _log;
 
 }
\ No newline at end of file
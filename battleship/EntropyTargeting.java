@@ -0,0 +1,318 @@
+package battleship;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static battleship.Piece.*;
+
+/** Chooses the shot that is expected to tell the most about where the
+ *  enemy fleet lies.  A shot's result is fixed by the layout of the fleet,
+ *  so the expected fall in the entropy of the layouts consistent with the
+ *  board is the entropy of the shot's result: miss, hit, or hit that sinks
+ *  a given ship.  Those chances are estimated from random full-fleet
+ *  layouts consistent with the board (misses empty, every hit covered, no
+ *  overlaps, sunk ships wholly on hits, ships afloat not).  One set of
+ *  samples gives the hit and the miss branch of every square at once.
+ *  Once few enough layouts remain, they are counted exactly instead.
+ *
+ *  The samples must be uniform over the consistent layouts, or the
+ *  chances are skewed towards layouts that are easy to build.  So each
+ *  ship's placement is drawn uniformly and independently from those that
+ *  fit the board on their own, and a whole layout whose ships overlap or
+ *  leave a hit uncovered is rejected and drawn again, never repaired.
+ *
+ *  Sampling runs in fixed-size chunks on a fork-join pool, each chunk with
+ *  its own random stream, so the result depends only on the seed and not
+ *  on the number of threads.
+ *  @author Andrew Fang */
+class EntropyTargeting {
+
+    /** A targeter for NxN boards running on POOL. */
+    EntropyTargeting(int n, ForkJoinPool pool) {
+        _n = n;
+        _pool = pool;
+        _placements = Placements.of(n);
+        _cover = new FleetCover(n);
+    }
+
+    /** Returns the length of a side of the boards. */
+    int size() {
+        return _n;
+    }
+
+    /** Returns the best shot at BOARD.  The consistent layouts are
+     *  counted exactly if that takes no more than EXACTMILLIS; otherwise
+     *  they are sampled with randomness from SEED until DEADLINE (as from
+     *  System.currentTimeMillis) or MAXSAMPLES layouts.  Returns null if
+     *  too few consistent layouts were sampled. */
+    Move choose(ReadOnlyBoard board, long seed, long deadline) {
+        int cells = _n * _n;
+        byte[] known = new byte[cells];
+        for (int k = 0; k < cells; k++) {
+            Piece p = board.get(k % _n + 1, k / _n + 1);
+            known[k] = p == HIT ? BatchSim.HIT
+                : p == MISS ? BatchSim.MISS : BatchSim.UNKNOWN;
+        }
+        int[][] candidates = new int[FLEET.length][];
+        boolean sampling = true;
+        for (int s = 0; s < FLEET.length; s++) {
+            candidates[s] = candidates(known, FLEET[s].size(),
+                                       board.sunk(FLEET[s]));
+            sampling &= candidates[s].length > 0;
+        }
+
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        Counts total = new Counts(cells);
+        _cover.update(board);
+        long budget = System.currentTimeMillis() + EXACTMILLIS;
+        boolean exact = _cover.enumerate(total, Math.min(deadline, budget))
+            && total.samples > 0;
+        if (!exact) {
+            total = new Counts(cells);
+        }
+        int chunk = 0;
+        while (!exact && sampling && total.samples < MAXSAMPLES
+               && chunk < MAXCHUNKS && System.currentTimeMillis() < deadline) {
+            total.add(_pool.invoke(new Sample(known, candidates, seed,
+                                              chunk, chunk + ROUNDCHUNKS)));
+            chunk += ROUNDCHUNKS;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = exact ? "entropy enumeration" : "entropy sampling";
+            event.boardSize = _n;
+            event.candidates = cells - board.shotsTaken();
+            event.samples = total.samples;
+            event.commit();
+        }
+        if (!exact && total.samples < MINSAMPLES) {
+            return null;
+        }
+        return best(known, total);
+    }
+
+    /** Returns the placements of a ship of length LEN that cover no miss
+     *  of KNOWN and lie wholly on hits iff SUNK. */
+    private int[] candidates(byte[] known, int len, boolean sunk) {
+        int[] result = new int[_placements.count(len)];
+        int count = 0;
+        for (int k = 0; k < result.length; k++) {
+            int start = _placements.start(len, k);
+            int step = _placements.step(len, k);
+            int hits = 0;
+            boolean fits = true;
+            for (int i = 0; i < len && fits; i++) {
+                int cell = start + i * step;
+                fits = known[cell] != BatchSim.MISS;
+                hits += known[cell] == BatchSim.HIT ? 1 : 0;
+            }
+            if (fits && sunk == (hits == len)) {
+                result[count] = k;
+                count += 1;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /** Returns the open square of KNOWN whose result has the greatest
+     *  entropy under COUNTS, preferring the likelier hit among ties. */
+    private Move best(byte[] known, Counts counts) {
+        double n = counts.samples;
+        int best = -1;
+        double bestGain = -1, bestHit = -1;
+        for (int k = 0; k < known.length; k++) {
+            if (known[k] != BatchSim.UNKNOWN) {
+                continue;
+            }
+            int hits = counts.hits[k];
+            int plain = hits;
+            double gain = 0;
+            for (int s = 0; s < FLEET.length; s++) {
+                int sinks = counts.sinks[s][k];
+                plain -= sinks;
+                gain -= plogp(sinks / n);
+            }
+            gain -= plogp(plain / n) + plogp((n - hits) / n);
+            double hit = hits / n;
+            if (gain > bestGain + EPSILON
+                || (gain > bestGain - EPSILON && hit > bestHit)) {
+                best = k;
+                bestGain = gain;
+                bestHit = hit;
+            }
+        }
+        return Move.create(best % _n + 1, best / _n + 1);
+    }
+
+    /** Returns P log P, taking 0 log 0 as 0. */
+    private static double plogp(double p) {
+        return p <= 0 ? 0 : p * Math.log(p);
+    }
+
+    /** Tallies of sampled or enumerated layouts. */
+    static class Counts {
+
+        /** Empty tallies over CELLS squares. */
+        Counts(int cells) {
+            hits = new int[cells];
+            sinks = new int[FLEET.length][cells];
+        }
+
+        /** Adds OTHER to these tallies. */
+        void add(Counts other) {
+            samples += other.samples;
+            for (int k = 0; k < hits.length; k++) {
+                hits[k] += other.hits[k];
+            }
+            for (int s = 0; s < FLEET.length; s++) {
+                for (int k = 0; k < hits.length; k++) {
+                    sinks[s][k] += other.sinks[s][k];
+                }
+            }
+        }
+
+        /** The number of layouts counted. */
+        int samples;
+        /** By open square, the layouts with a ship there. */
+        final int[] hits;
+        /** By ship and open square, the layouts in which a shot there
+         *  would sink that ship. */
+        final int[][] sinks;
+    }
+
+    /** Samples chunks [LO, HI) of layouts, splitting in halves. */
+    private class Sample extends RecursiveTask<Counts> {
+
+        /** Samples chunks LO to HI - 1 of the layouts consistent with
+         *  KNOWN, ship S taking one of the placements CANDIDATES[S],
+         *  drawing chunk K's randomness from SEED and K. */
+        Sample(byte[] known, int[][] candidates, long seed, int lo,
+               int hi) {
+            _known = known;
+            _candidates = candidates;
+            _seed = seed;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected Counts compute() {
+            if (_hi - _lo > 1) {
+                int mid = (_lo + _hi) >>> 1;
+                Sample left =
+                    new Sample(_known, _candidates, _seed, _lo, mid);
+                left.fork();
+                Counts counts =
+                    new Sample(_known, _candidates, _seed, mid, _hi)
+                    .compute();
+                counts.add(left.join());
+                return counts;
+            }
+            Counts counts = new Counts(_known.length);
+            GameRandom random = new GameRandom(_seed).split(_lo);
+            boolean[] used = new boolean[_known.length];
+            int[] chosen = new int[FLEET.length];
+            for (int t = 0; t < CHUNKATTEMPTS
+                     && counts.samples < CHUNKSAMPLES; t++) {
+                if (layout(random, used, chosen)) {
+                    tally(chosen, counts);
+                }
+            }
+            return counts;
+        }
+
+        /** Draws a layout of the fleet at random, each ship's placement
+         *  uniformly from its candidates, setting CHOSEN[S] to the
+         *  placement of ship S and USED to the squares covered.  Returns
+         *  true iff the layout is consistent with the board; the caller
+         *  rejects it otherwise, so that the layouts accepted are
+         *  uniform. */
+        private boolean layout(GameRandom random, boolean[] used,
+                               int[] chosen) {
+            Arrays.fill(used, false);
+            for (int s = 0; s < FLEET.length; s++) {
+                int len = FLEET[s].size();
+                int[] candidates = _candidates[s];
+                int k = candidates[random.nextInt(candidates.length)];
+                chosen[s] = k;
+                int start = _placements.start(len, k);
+                int step = _placements.step(len, k);
+                for (int i = 0; i < len; i++) {
+                    if (used[start + i * step]) {
+                        return false;
+                    }
+                    used[start + i * step] = true;
+                }
+            }
+            for (int k = 0; k < _known.length; k++) {
+                if (_known[k] == BatchSim.HIT && !used[k]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Adds the layout CHOSEN to COUNTS. */
+        private void tally(int[] chosen, Counts counts) {
+            counts.samples += 1;
+            for (int s = 0; s < FLEET.length; s++) {
+                int len = FLEET[s].size();
+                int start = _placements.start(len, chosen[s]);
+                int step = _placements.step(len, chosen[s]);
+                int open = 0, last = -1;
+                for (int i = 0; i < len; i++) {
+                    int cell = start + i * step;
+                    if (_known[cell] == BatchSim.UNKNOWN) {
+                        counts.hits[cell] += 1;
+                        open += 1;
+                        last = cell;
+                    }
+                }
+                if (open == 1) {
+                    counts.sinks[s][last] += 1;
+                }
+            }
+        }
+
+        /** What is known of each square. */
+        private final byte[] _known;
+        /** By ship, the placements it may take. */
+        private final int[][] _candidates;
+        /** The seed of the whole sample. */
+        private final long _seed;
+        /** The chunks to sample. */
+        private final int _lo, _hi;
+    }
+
+    /** The fleet, in a fixed order. */
+    private static final Shipname[] FLEET = MachinePlayer.FLEET;
+
+    /** Consistent layouts sampled per chunk, at most. */
+    static final int CHUNKSAMPLES = 128;
+    /** Layouts tried per chunk, at most. */
+    static final int CHUNKATTEMPTS = 20 * CHUNKSAMPLES;
+    /** Chunks sampled between looks at the clock. */
+    static final int ROUNDCHUNKS = 16;
+    /** Layouts wanted in all. */
+    static final int MAXSAMPLES = 4 * ROUNDCHUNKS * CHUNKSAMPLES;
+    /** Chunks sampled at most, however few layouts they find. */
+    static final int MAXCHUNKS = MAXSAMPLES / CHUNKSAMPLES;
+    /** Milliseconds allowed for counting the layouts exactly. */
+    static final int EXACTMILLIS = 100;
+    /** Layouts needed to trust the estimate. */
+    static final int MINSAMPLES = 200;
+    /** Gains closer than this are ties. */
+    private static final double EPSILON = 1e-9;
+
+    /** The length of a side of the board. */
+    private final int _n;
+    /** The pool the sampling runs on. */
+    private final ForkJoinPool _pool;
+    /** The placements on the board. */
+    private final Placements _placements;
+    /** The enumerator of consistent layouts, kept up to date with the
+     *  board from move to move. */
+    private final FleetCover _cover;
+}
@@ -0,0 +1,290 @@
+package battleship;
+
+import static battleship.Piece.*;
+
+/** Enumerates every layout of the fleet consistent with what is known of
+ *  a board, as an exact cover problem solved with Knuth's dancing links.
+ *  The matrix has a row for each placement of each ship and a column for
+ *  each ship and each square.  Every ship column and every hit square
+ *  must be covered exactly once, and every other square at most once, so
+ *  ship and hit columns are primary and the rest secondary.
+ *
+ *  The matrix is kept from shot to shot: a miss covers its square's
+ *  column for good, removing every placement through it, and a hit makes
+ *  its column primary.  A placement that lies wholly on hits fits iff its
+ *  ship is sunk; that is checked as rows are tried.  Enumeration is
+ *  interruptible: it gives up at a deadline, leaving the matrix as it was.
+ *  @author Andrew Fang */
+class FleetCover {
+
+    /** An enumerator of layouts on NxN boards, with nothing yet known. */
+    FleetCover(int n) {
+        _n = n;
+        _placements = Placements.of(n);
+        build();
+    }
+
+    /** Returns the length of a side of the boards. */
+    int size() {
+        return _n;
+    }
+
+    /** Brings the matrix up to date with BOARD.  Shots new since the last
+     *  call are applied incrementally; if BOARD has forgotten a shot, as
+     *  after an undo or on a new board, the matrix is built afresh. */
+    void update(ReadOnlyBoard board) {
+        for (int k = 0; k < _cells; k++) {
+            if (_known[k] != BatchSim.UNKNOWN
+                && board.get(k % _n + 1, k / _n + 1) == UNKNOWN) {
+                build();
+                break;
+            }
+        }
+        for (int k = 0; k < _cells; k++) {
+            if (_known[k] == BatchSim.UNKNOWN) {
+                Piece p = board.get(k % _n + 1, k / _n + 1);
+                if (p == MISS) {
+                    miss(k);
+                } else if (p == HIT) {
+                    hit(k);
+                }
+            }
+        }
+        for (int s = 0; s < FLEET.length; s++) {
+            _sunk[s] = board.sunk(FLEET[s]);
+        }
+    }
+
+    /** Adds every consistent layout to COUNTS, unless DEADLINE (as from
+     *  System.currentTimeMillis) passes first.  Returns true iff every
+     *  layout was counted; otherwise COUNTS holds a biased part of them
+     *  and should be discarded. */
+    boolean enumerate(EntropyTargeting.Counts counts, long deadline) {
+        _counts = counts;
+        _deadline = deadline;
+        _nodes = 0;
+        _aborted = false;
+        search(0);
+        _counts = null;
+        return !_aborted;
+    }
+
+    /** Builds the matrix for a board on which nothing is known. */
+    private void build() {
+        int rows = 0, nodes = 0;
+        for (Shipname ship : FLEET) {
+            rows += _placements.count(ship.size());
+            nodes += _placements.count(ship.size()) * (ship.size() + 1);
+        }
+        _cells = _n * _n;
+        int columns = FLEET.length + _cells;
+        _root = columns;
+        int total = columns + 1 + nodes;
+        _left = new int[total];
+        _right = new int[total];
+        _up = new int[total];
+        _down = new int[total];
+        _column = new int[total];
+        _row = new int[total];
+        _length = new int[columns];
+        _rowShip = new int[rows];
+        _rowFirst = new int[rows];
+        _rowHits = new int[rows];
+        _known = new byte[_cells];
+        _sunk = new boolean[FLEET.length];
+        _chosen = new int[FLEET.length];
+
+        for (int c = 0; c <= columns; c++) {
+            _up[c] = _down[c] = c;
+            _left[c] = _right[c] = c;
+        }
+        for (int s = 0; s < FLEET.length; s++) {
+            insertColumn(s);
+        }
+        int node = columns + 1, row = 0;
+        for (int s = 0; s < FLEET.length; s++) {
+            int len = FLEET[s].size();
+            for (int k = 0; k < _placements.count(len); k++) {
+                int start = _placements.start(len, k);
+                int step = _placements.step(len, k);
+                _rowShip[row] = s;
+                _rowFirst[row] = node;
+                for (int i = 0; i <= len; i++) {
+                    int c = i == 0 ? s : FLEET.length + start + (i - 1) * step;
+                    _column[node] = c;
+                    _row[node] = row;
+                    _up[node] = _up[c];
+                    _down[node] = c;
+                    _down[_up[c]] = node;
+                    _up[c] = node;
+                    _length[c] += 1;
+                    _left[node] = i == 0 ? node : node - 1;
+                    _right[node] = i == len ? _rowFirst[row] : node + 1;
+                    node += 1;
+                }
+                _left[_rowFirst[row]] = node - 1;
+                row += 1;
+            }
+        }
+    }
+
+    /** Records a miss at square K: no placement may cover it. */
+    private void miss(int k) {
+        _known[k] = BatchSim.MISS;
+        cover(FLEET.length + k);
+    }
+
+    /** Records a hit at square K: some placement must cover it. */
+    private void hit(int k) {
+        _known[k] = BatchSim.HIT;
+        int c = FLEET.length + k;
+        for (int i = _down[c]; i != c; i = _down[i]) {
+            _rowHits[_row[i]] += 1;
+        }
+        insertColumn(c);
+    }
+
+    /** Makes column C primary by linking it into the header list. */
+    private void insertColumn(int c) {
+        _left[c] = _left[_root];
+        _right[c] = _root;
+        _right[_left[_root]] = c;
+        _left[_root] = c;
+    }
+
+    /** Runs Knuth's Algorithm X, having chosen DEPTH rows so far. */
+    private void search(int depth) {
+        if (_right[_root] == _root) {
+            tally(depth);
+            return;
+        }
+        _nodes += 1;
+        if ((_nodes & CHECKMASK) == 0
+            && System.currentTimeMillis() >= _deadline) {
+            _aborted = true;
+        }
+        if (_aborted) {
+            return;
+        }
+        int best = _right[_root];
+        for (int c = _right[best]; c != _root; c = _right[c]) {
+            if (_length[c] < _length[best]) {
+                best = c;
+            }
+        }
+        if (_length[best] == 0) {
+            return;
+        }
+        cover(best);
+        for (int r = _down[best]; r != best && !_aborted; r = _down[r]) {
+            if (!fits(_row[r])) {
+                continue;
+            }
+            _chosen[depth] = _row[r];
+            for (int j = _right[r]; j != r; j = _right[j]) {
+                cover(_column[j]);
+            }
+            search(depth + 1);
+            for (int j = _left[r]; j != r; j = _left[j]) {
+                uncover(_column[j]);
+            }
+        }
+        uncover(best);
+    }
+
+    /** Returns true iff placement ROW lies wholly on hits exactly when
+     *  its ship is sunk. */
+    private boolean fits(int row) {
+        int s = _rowShip[row];
+        return _sunk[s] == (_rowHits[row] == FLEET[s].size());
+    }
+
+    /** Adds the layout of the DEPTH rows chosen to the counts. */
+    private void tally(int depth) {
+        _counts.samples += 1;
+        if (_counts.samples == Integer.MAX_VALUE) {
+            _aborted = true;
+        }
+        for (int d = 0; d < depth; d++) {
+            int row = _chosen[d];
+            int first = _rowFirst[row];
+            int open = 0, last = -1;
+            for (int j = _right[first]; j != first; j = _right[j]) {
+                int cell = _column[j] - FLEET.length;
+                if (_known[cell] == BatchSim.UNKNOWN) {
+                    _counts.hits[cell] += 1;
+                    open += 1;
+                    last = cell;
+                }
+            }
+            if (open == 1) {
+                _counts.sinks[_rowShip[row]][last] += 1;
+            }
+        }
+    }
+
+    /** Removes column C from the header list and every row through it
+     *  from the other columns. */
+    private void cover(int c) {
+        _right[_left[c]] = _right[c];
+        _left[_right[c]] = _left[c];
+        for (int i = _down[c]; i != c; i = _down[i]) {
+            for (int j = _right[i]; j != i; j = _right[j]) {
+                _up[_down[j]] = _up[j];
+                _down[_up[j]] = _down[j];
+                _length[_column[j]] -= 1;
+            }
+        }
+    }
+
+    /** Undoes cover(C). */
+    private void uncover(int c) {
+        for (int i = _up[c]; i != c; i = _up[i]) {
+            for (int j = _left[i]; j != i; j = _left[j]) {
+                _length[_column[j]] += 1;
+                _up[_down[j]] = j;
+                _down[_up[j]] = j;
+            }
+        }
+        _right[_left[c]] = c;
+        _left[_right[c]] = c;
+    }
+
+    /** The fleet, in a fixed order. */
+    private static final Shipname[] FLEET = MachinePlayer.FLEET;
+
+    /** Search nodes between looks at the clock, less one. */
+    private static final int CHECKMASK = (1 << 12) - 1;
+
+    /** The length of a side of the board. */
+    private final int _n;
+    /** The placements on the board. */
+    private final Placements _placements;
+    /** The number of squares. */
+    private int _cells;
+    /** The header of the list of primary columns. */
+    private int _root;
+    /** The links of each node: column headers, then the root, then the
+     *  nodes of each row, ship first. */
+    private int[] _left, _right, _up, _down;
+    /** By node, its column and row. */
+    private int[] _column, _row;
+    /** By column, the rows still through it. */
+    private int[] _length;
+    /** By row, its ship, its first node and the hits it covers. */
+    private int[] _rowShip, _rowFirst, _rowHits;
+    /** What is known of each square, as in BatchSim. */
+    private byte[] _known;
+    /** By ship, whether it is sunk. */
+    private boolean[] _sunk;
+    /** The rows chosen at each depth of the search. */
+    private int[] _chosen;
+    /** Where the layouts found are counted. */
+    private EntropyTargeting.Counts _counts;
+    /** When to give up. */
+    private long _deadline;
+    /** Search nodes visited so far. */
+    private long _nodes;
+    /** True iff the search ran out of time. */
+    private boolean _aborted;
+}
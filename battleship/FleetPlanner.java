@@ -0,0 +1,437 @@
+package battleship;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/** Finds fleet layouts that are hard to hit.  A layout is scored by the
+ *  average number of shots a panel of targeters needs to sink it, over a
+ *  fixed set of headless simulated games, and layouts are searched by
+ *  simulated annealing: several independent chains run in parallel on a
+ *  fork-join pool, each moving one ship at a time and keeping moves that
+ *  make the fleet harder to sink (and, while the chain is hot, some that
+ *  make it easier).  Every chain and every simulated game draws from its
+ *  own stream split from a fixed seed, so the layouts found do not depend
+ *  on the number of threads.  A search scores a layout on only a few
+ *  games, so the best layout of each chain is scored again on many games
+ *  it was not chosen by, and the layouts are ranked by that score.
+ *
+ *  The panel is the density targeter of MachinePlayer and BatchSim, and a
+ *  hunt-and-target player that shoots a checkerboard until it hits and
+ *  then around its hits.  The best layout of each chain is kept, per
+ *  board size, for the life of the program, unless the shared Tables
+ *  already hold the layouts of the size.
+ *  @author Andrew Fang */
+class FleetPlanner {
+
+    /** Returns hard layouts for NxN boards, finding them if need be.  A
+     *  layout holds a placement (as in Placements) for each ship of
+     *  MachinePlayer.FLEET.  The list and its layouts are the caller's
+     *  own copies. */
+    static List<int[]> layouts(int n) {
+        List<int[]> result = new ArrayList<>();
+        for (int[] layout : cached(n)) {
+            result.add(layout.clone());
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /** Returns the cached layouts for NxN boards, finding them if need
+     *  be.  They are shared, and must not be changed. */
+    private static List<int[]> cached(int n) {
+        List<int[]> result = CACHE.get(n);
+        CacheEvent.lookup("fleet layouts", result != null);
+        if (result == null) {
+            result = CACHE.computeIfAbsent(n, k -> {
+                Tables tables = Tables.shared();
+                List<int[]> shared = tables == null ? null : tables.layouts(k);
+                return shared != null ? shared : new FleetPlanner(k)
+                    .plan(ForkJoinPool.commonPool());
+            });
+        }
+        return result;
+    }
+
+    /** Places the fleet on BOARD, an empty board of a size no more than
+     *  SelfBoard.MAXSIZE, in one of the hard layouts chosen with
+     *  RANDOM. */
+    static void place(SelfBoard board, GameRandom random) {
+        int n = board.size();
+        List<int[]> pool = cached(n);
+        int[] layout = pool.get(random.nextInt(pool.size()));
+        Placements placements = Placements.of(n);
+        for (int s = 0; s < FLEET.length; s++) {
+            int len = FLEET[s].size();
+            int start = placements.start(len, layout[s]);
+            int step = placements.step(len, layout[s]);
+            int c = start % n + 1, r = start / n + 1;
+            board.place(new Ship(FLEET[s]), step == 1
+                        ? new Coordinate(c, r, c + len - 1, r)
+                        : new Coordinate(c, r, c, r + len - 1));
+        }
+    }
+
+    /** A planner for NxN boards. */
+    FleetPlanner(int n) {
+        _n = n;
+        _cells = n * n;
+        _placements = Placements.of(n);
+    }
+
+    /** Returns the best layout of each of CHAINS annealing chains run on
+     *  POOL, hardest on the held-out games first. */
+    List<int[]> plan(ForkJoinPool pool) {
+        List<Chain> done = new ArrayList<>();
+        GameRandom root = new GameRandom(SEED);
+        for (int c = 0; c < CHAINS; c++) {
+            Chain chain = new Chain(root.split(c));
+            pool.execute(chain);
+            done.add(chain);
+        }
+        for (Chain chain : done) {
+            chain.join();
+        }
+        done.sort((a, b) -> Double.compare(b.heldOutScore(),
+                                           a.heldOutScore()));
+        List<int[]> result = new ArrayList<>();
+        for (Chain chain : done) {
+            result.add(chain.best());
+        }
+        return result;
+    }
+
+    /** Returns the average number of shots the panel needs to sink
+     *  LAYOUT in the games of the search, using scratch space SIM. */
+    double score(int[] layout, Simulator sim) {
+        return score(layout, sim, GAMESEEDS, GAMES);
+    }
+
+    /** Returns the average number of shots the panel needs to sink
+     *  LAYOUT in the held-out games, using scratch space SIM. */
+    double heldOutScore(int[] layout, Simulator sim) {
+        return score(layout, sim, HELDOUTSEEDS, HELDOUT);
+    }
+
+    /** Returns the average number of shots the panel needs to sink
+     *  LAYOUT in the first COUNT games per targeter of SEEDS, using
+     *  scratch space SIM. */
+    private double score(int[] layout, Simulator sim, GameRandom seeds,
+                         int count) {
+        sim.setFleet(layout);
+        long shots = 0;
+        for (int g = 0; g < count; g++) {
+            shots += sim.play(true, seeds, g) + sim.play(false, seeds, g);
+        }
+        return (double) shots / (2 * count);
+    }
+
+    /** Returns a drawing of LAYOUT on a board. */
+    String draw(int[] layout) {
+        char[] squares = new char[_cells];
+        Arrays.fill(squares, '-');
+        for (int s = 0; s < FLEET.length; s++) {
+            int len = FLEET[s].size();
+            for (int i = 0; i < len; i++) {
+                squares[_placements.start(len, layout[s])
+                        + i * _placements.step(len, layout[s])] =
+                    FLEET[s].toString().charAt(0);
+            }
+        }
+        StringBuilder out = new StringBuilder();
+        for (int r = 0; r < _n; r++) {
+            for (int c = 0; c < _n; c++) {
+                out.append(squares[r * _n + c]).append(' ');
+            }
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    /** Prints the hard layouts found for the board sizes in ARGS
+     *  (default 10), and how many shots they take to sink. */
+    public static void main(String... args) {
+        if (args.length == 0) {
+            args = new String[] { "10" };
+        }
+        for (String arg : args) {
+            int n = Integer.parseInt(arg);
+            FleetPlanner planner = new FleetPlanner(n);
+            long start = System.nanoTime();
+            List<int[]> result = layouts(n);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            Simulator sim = planner.new Simulator();
+            System.out.printf("%dx%d: %d layouts in %d ms, %d games%n", n, n,
+                              result.size(), millis,
+                              (long) CHAINS * ((STEPS + 1) * GAMES + HELDOUT)
+                              * 2);
+            for (int[] layout : result) {
+                System.out.printf("%.2f shots in the search, %.2f held out"
+                                  + "%n%s", planner.score(layout, sim),
+                                  planner.heldOutScore(layout, sim),
+                                  planner.draw(layout));
+            }
+            Chain chain = planner.new Chain(new GameRandom(SEED));
+            double random = 0;
+            for (int i = 0; i < CHAINS; i++) {
+                random += planner.heldOutScore(chain.randomLayout(), sim);
+            }
+            System.out.printf("%d random layouts: %.2f shots held out%n",
+                              CHAINS, random / CHAINS);
+        }
+    }
+
+    /** One chain of simulated annealing. */
+    private class Chain extends RecursiveTask<Chain> {
+
+        /** A chain drawing its randomness from RANDOM. */
+        Chain(GameRandom random) {
+            _random = random;
+        }
+
+        @Override
+        protected Chain compute() {
+            Simulator sim = new Simulator();
+            int[] current = randomLayout();
+            double score = score(current, sim);
+            _best = current.clone();
+            _bestScore = score;
+            double temp = HOT;
+            double cooling = Math.pow(COLD / HOT, 1.0 / STEPS);
+            for (int step = 0; step < STEPS; step++, temp *= cooling) {
+                int[] next = neighbour(current);
+                double nextScore = score(next, sim);
+                if (nextScore >= score
+                    || _random.nextDouble()
+                       < Math.exp((nextScore - score) / temp)) {
+                    current = next;
+                    score = nextScore;
+                    if (score > _bestScore) {
+                        _best = current.clone();
+                        _bestScore = score;
+                    }
+                }
+            }
+            _heldOutScore = FleetPlanner.this.heldOutScore(_best, sim);
+            return this;
+        }
+
+        /** Returns the hardest layout this chain found. */
+        int[] best() {
+            return _best;
+        }
+
+        /** Returns the score of best() in the games of the search. */
+        double bestScore() {
+            return _bestScore;
+        }
+
+        /** Returns the score of best() in the held-out games. */
+        double heldOutScore() {
+            return _heldOutScore;
+        }
+
+        /** Returns a layout with every ship placed at random. */
+        int[] randomLayout() {
+            int[] layout = new int[FLEET.length];
+            boolean[] used = new boolean[_cells];
+            for (int s = 0; s < FLEET.length; s++) {
+                layout[s] = randomPlacement(s, used);
+                mark(s, layout[s], used);
+            }
+            return layout;
+        }
+
+        /** Returns LAYOUT with one ship moved at random. */
+        private int[] neighbour(int[] layout) {
+            int[] next = layout.clone();
+            int moved = _random.nextInt(FLEET.length);
+            boolean[] used = new boolean[_cells];
+            for (int s = 0; s < FLEET.length; s++) {
+                if (s != moved) {
+                    mark(s, layout[s], used);
+                }
+            }
+            next[moved] = randomPlacement(moved, used);
+            return next;
+        }
+
+        /** Returns a random placement of ship S covering no square in
+         *  USED.  Ships are placed largest first, so there always is
+         *  one. */
+        private int randomPlacement(int s, boolean[] used) {
+            int len = FLEET[s].size();
+            while (true) {
+                int k = _random.nextInt(_placements.count(len));
+                boolean free = true;
+                for (int i = 0; i < len && free; i++) {
+                    free = !used[_placements.start(len, k)
+                                 + i * _placements.step(len, k)];
+                }
+                if (free) {
+                    return k;
+                }
+            }
+        }
+
+        /** Sets the squares in USED of placement K of ship S. */
+        private void mark(int s, int k, boolean[] used) {
+            int len = FLEET[s].size();
+            for (int i = 0; i < len; i++) {
+                used[_placements.start(len, k)
+                     + i * _placements.step(len, k)] = true;
+            }
+        }
+
+        /** The source of randomness of this chain. */
+        private final GameRandom _random;
+        /** The hardest layout found. */
+        private int[] _best;
+        /** The score of _best in the games of the search. */
+        private double _bestScore;
+        /** The score of _best in the held-out games. */
+        private double _heldOutScore;
+    }
+
+    /** Plays headless games against one fleet at a time, for one
+     *  thread. */
+    class Simulator {
+
+        /** A simulator with no fleet yet. */
+        Simulator() {
+            _fleet = new byte[_cells];
+            _known = new byte[_cells];
+            _density = new int[_cells];
+            _kernels = Density.create(_n);
+            _open = new int[_cells];
+            for (Shipname ship : FLEET) {
+                _fleetCells += ship.size();
+            }
+        }
+
+        /** Makes LAYOUT the fleet to be sunk. */
+        void setFleet(int[] layout) {
+            Arrays.fill(_fleet, (byte) 0);
+            for (int s = 0; s < FLEET.length; s++) {
+                int len = FLEET[s].size();
+                for (int i = 0; i < len; i++) {
+                    _fleet[_placements.start(len, layout[s])
+                           + i * _placements.step(len, layout[s])] = 1;
+                }
+            }
+        }
+
+        /** Returns the shots needed to sink the fleet in simulated game G
+         *  of SEEDS by the density targeter if DENSITY, else by the
+         *  hunt-and-target one. */
+        int play(boolean density, GameRandom seeds, int g) {
+            GameRandom random = seeds.split(density ? 2 * g : 2 * g + 1);
+            Arrays.fill(_known, BatchSim.UNKNOWN);
+            int hits = 0, shots = 0;
+            while (hits < _fleetCells) {
+                int cell = density ? densityShot(random) : huntShot(random);
+                shots += 1;
+                if (_fleet[cell] != 0) {
+                    _known[cell] = BatchSim.HIT;
+                    hits += 1;
+                } else {
+                    _known[cell] = BatchSim.MISS;
+                }
+            }
+            return shots;
+        }
+
+        /** Returns the densest open square, choosing among ties with
+         *  RANDOM. */
+        private int densityShot(GameRandom random) {
+            _kernels.load(_known, 0);
+            for (Shipname ship : FLEET) {
+                _kernels.add(ship.size());
+            }
+            _kernels.copyValues(_density, 0);
+            return BatchSim.choose(_known, _density, 0, _cells,
+                                   _kernels.max(), random);
+        }
+
+        /** Returns an open square next to a hit if there is one, else an
+         *  open square of the checkerboard if there is one, else any open
+         *  square, choosing at random with RANDOM. */
+        private int huntShot(GameRandom random) {
+            int open = 0;
+            for (int k = 0; k < _cells; k++) {
+                if (_known[k] == BatchSim.UNKNOWN && nextToHit(k)) {
+                    _open[open++] = k;
+                }
+            }
+            for (int parity = 0; open == 0 && parity < 2; parity++) {
+                for (int k = 0; k < _cells; k++) {
+                    if (_known[k] == BatchSim.UNKNOWN
+                        && (k / _n + k % _n) % 2 == parity) {
+                        _open[open++] = k;
+                    }
+                }
+            }
+            return _open[random.nextInt(open)];
+        }
+
+        /** Returns true iff a square beside square K is a hit. */
+        private boolean nextToHit(int k) {
+            int r = k / _n, c = k % _n;
+            return (c > 0 && _known[k - 1] == BatchSim.HIT)
+                || (c + 1 < _n && _known[k + 1] == BatchSim.HIT)
+                || (r > 0 && _known[k - _n] == BatchSim.HIT)
+                || (r + 1 < _n && _known[k + _n] == BatchSim.HIT);
+        }
+
+        /** 1 at each ship square. */
+        private final byte[] _fleet;
+        /** What the targeter knows of each square, as in BatchSim. */
+        private final byte[] _known;
+        /** The density map of _known. */
+        private final int[] _density;
+        /** The density kernels. */
+        private final Density _kernels;
+        /** Candidate squares for the hunt-and-target player. */
+        private final int[] _open;
+        /** The number of ship squares. */
+        private int _fleetCells;
+    }
+
+    /** The fleet, in a fixed order. */
+    private static final Shipname[] FLEET = MachinePlayer.FLEET;
+
+    /** The annealing chains run in parallel. */
+    static final int CHAINS = 8;
+    /** Moves tried per chain. */
+    static final int STEPS = 150;
+    /** Simulated games per targeter per layout scored in a search. */
+    static final int GAMES = 6;
+    /** Simulated games per targeter on which the best layout of each
+     *  chain is scored again. */
+    static final int HELDOUT = 200;
+    /** The temperatures, in shots, at the start and end of a chain. */
+    private static final double HOT = 2.0, COLD = 0.05;
+    /** The seed of every search, so that a size's layouts are always the
+     *  same. */
+    static final long SEED = 0x5EED;
+    /** The streams of the simulated games: every layout is scored
+     *  against the same games, so that scores differ only by layout. */
+    private static final GameRandom GAMESEEDS = new GameRandom(SEED + 1);
+    /** The streams of the held-out games, none of them played in a
+     *  search. */
+    private static final GameRandom HELDOUTSEEDS = new GameRandom(SEED + 2);
+
+    /** The layouts found for each board size so far. */
+    private static final ConcurrentHashMap<Integer, List<int[]>> CACHE =
+        new ConcurrentHashMap<>();
+
+    /** The length of a side of the board. */
+    private final int _n;
+    /** The number of squares. */
+    private final int _cells;
+    /** The placements on the board. */
+    private final Placements _placements;
+}
@@ -1,6 +1,7 @@
 package battleship;
 
-import java.util.Random;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Scanner;
 import static battleship.Bio.*;
 import static battleship.Side.*;
@@ -15,109 +16,245 @@ class Game {
      *  DEBUG is the debugging parameter specified in main.
      */
     Game(int numHuman, long seed, float time, int size, int debug) {
-        _randomSource = new Random(seed);
+        _seed = seed;
+        _randomSource = new GameRandom(seed);
+        for (Side side : Side.values()) {
+            _streams[side.ordinal()] = _randomSource.split(side.ordinal());
+        }
         _time = time;
         _debug = debug;
         _numHumans = numHuman;
         _aiDeployed = 0;
-	_size = size;
-    }
-
-    /** Return true iff PLAYER's ships are all found. */
-    boolean shipsFound() {
-	_player.checkShips();
-	if (_player.shipsleft() == 0) {
-	    return true;
-	}
+        _size = size;
     }
 
     /** Play this game, printing any transcript and other results. */
     public void play() {
+        if (_size > SelfBoard.MAXSIZE) {
+            playSparse();
+            return;
+        }
         Scanner inp = new Scanner(System.in);
-	Player p1, p2;
-	if (numHuman == 2) {
-	    p1 = new HumanPlayer(PLAYER1, new SelfBoard(_size), null);
-	    p2 = new HumanPlayer(PLAYER2, new SelfBoard(_size), null);
-	} else if (numHuman = 1) {
-	    p1 = new HumanPlayer(PLAYER1, new SelfBoard(_size), null);
-	    p2 = new MachinePlayer(PLAYER2, new SelfBoard(_size), null);
-	} else {
-	    p1 = new MachinePlayer(PLAYER1, new SelfBoard(_size), null);
-	    p2 = new MachinePlayer(PLAYER2, new SelfBoard(_size), null);
-	}
-	p1.gameSetup(inp); //a method that sets up each selfboard however the players see fit
-	p2.gameSetup(inp);
-	p1.setEnemyBoard(new EnemyBoard(_size, p2.myBoard()));
-	p2.setEnemyBoard(new EnemyBoard(_size, p1.myBoard()));
-
-
-
-
+        Metrics.GAMES.incrementAndGet();
+        GameEvent gameEvent = new GameEvent();
+        gameEvent.begin();
+        if (_p1 == null) {
+            setup(inp);
+        }
 
         System.out.println("   WELCOME TO BATTLESHIP");
-	while (!p1.finish() %% !p2.finished());
-            if (_board.turn() == p1.side()) {
-                if (p1.getBio() == HUMAN) {
-                    System.out.print(_board.turn() + "> ");
-                    System.out.flush();
-                    if (p1.decide(inp)) {
-                        if (_numHumans == 0) {
-                            p1 = setAI(p1);
-                            p2 = setAI(p2);
-                        } else if (_side == BLACK) {
-                            p2 = setAI(p2);
-                        } else {
-                            p1 = setAI(p1);
-                        }
-                        p1.startStopwatch();
-                        p2.startStopwatch();
-                    }
-                } else {
-                    p1.decide(inp);
+        while (!gameOver()) {
+            Side turn = _turn;
+            Player p = turn == PLAYER1 ? _p1 : _p2;
+            TurnEvent turnEvent = new TurnEvent();
+            turnEvent.begin();
+            long turnStart = System.nanoTime();
+            int hits = p.enemyBoard().hits();
+            int shots = p.enemyBoard().shotsTaken();
+            if (p.getBio() == HUMAN) {
+                Player other = turn == PLAYER1 ? _p2 : _p1;
+                if (other.getBio() == MACHINE) {
+                    ((MachinePlayer) other).ponder();
                 }
-            } else {
-                if (p2.getBio() == HUMAN) {
-                    System.out.print(_board.turn() + "> ");
-                    System.out.flush();
-                    if (p2.decide(inp)) {
-                        if (_numHumans == 0) {
-                            p1 = setAI(p1);
-                            p2 = setAI(p2);
-                        } else if (_side == WHITE) {
-                            p1 = setAI(p1);
-                        } else {
-                            p2 = setAI(p2);
-                        }
-                        p1.startStopwatch();
-                        p2.startStopwatch();
+                System.out.print(turn + "> ");
+                System.out.flush();
+                long start = Histogram.start();
+                boolean command = p.decide(inp);
+                Metrics.DECIDE.recordSince(start);
+                if (command) {
+                    if (_numHumans == 0) {
+                        _p1 = setAI(_p1);
+                        _p2 = setAI(_p2);
+                    } else if (turn == PLAYER1) {
+                        _p2 = setAI(_p2);
+                    } else {
+                        _p1 = setAI(_p1);
                     }
-                } else {
-                    p2.decide(inp);
+                    _p1.startStopwatch();
+                    _p2.startStopwatch();
+                    checkpoint();
+                    continue;
                 }
+            } else {
+                long start = Histogram.start();
+                p.decide(inp);
+                Metrics.DECIDE.recordSince(start);
+            }
+            _turns += 1;
+            _turnNanos += System.nanoTime() - turnStart;
+            turnEvent.end();
+            if (turnEvent.shouldCommit()) {
+                turnEvent.side = turn.toString();
+                turnEvent.bio = p.getBio().toString();
+                turnEvent.turn = _turns;
+                turnEvent.boardSize = _size;
+                turnEvent.hit = p.enemyBoard().hits() > hits;
+                turnEvent.commit();
+            }
+            if (_spectators != null) {
+                _spectators.publish(this, turn, shots);
+            }
+            _turn = turn.opponent();
+            checkpoint();
+        }
+        for (Player p : new Player[] { _p1, _p2 }) {
+            if (p.getBio() == MACHINE) {
+                ((MachinePlayer) p).cancelPonder();
             }
         }
-        if (_board.piecesContiguous(Side.BLACK)) {
-            System.out.println("Black wins.");
-        } else if (_board.piecesContiguous(Side.WHITE)) {
-            System.out.println("White wins.");
+        Side winner = _p1.enemyBoard().allSunk() ? PLAYER1 : PLAYER2;
+        System.out.println(winner + " wins.");
+        gameEvent.end();
+        if (gameEvent.shouldCommit()) {
+            gameEvent.boardSize = _size;
+            gameEvent.humans = _numHumans;
+            gameEvent.turns = _turns;
+            gameEvent.winner = winner.toString();
+            gameEvent.commit();
         }
+        if (_results != null) {
+            record(winner);
+        }
+        if (_debug > 0) {
+            System.err.print(Metrics.snapshot());
+        }
+    }
 
+    /** Plays this game between two machines to the end without printing
+     *  anything, and returns the winner.  The shots are those play would
+     *  make, so a simulation can stand in for a run of the program with
+     *  the same --seed. */
+    Side playHeadless() {
+        if (_numHumans != 0) {
+            throw new IllegalStateException("headless games need two"
+                                            + " machines");
+        }
+        Metrics.GAMES.incrementAndGet();
+        if (_p1 == null) {
+            setup(null);
+        }
+        while (!gameOver()) {
+            long turnStart = System.nanoTime();
+            long start = Histogram.start();
+            ((MachinePlayer) player(_turn)).fire();
+            Metrics.DECIDE.recordSince(start);
+            _turns += 1;
+            _turnNanos += System.nanoTime() - turnStart;
+            _turn = _turn.opponent();
+        }
+        Side winner = _p1.enemyBoard().allSunk() ? PLAYER1 : PLAYER2;
+        if (_results != null) {
+            record(winner);
+        }
+        return winner;
+    }
 
+    /** Returns the mean time taken by a turn played in this run, in
+     *  nanoseconds. */
+    long meanTurnNanos() {
+        return _turns == 0 ? 0 : _turnNanos / _turns;
+    }
 
+    /** Appends the result of this game, won by WINNER, to the results
+     *  file. */
+    private void record(Side winner) {
+        try {
+            _results.append(_seed, 0, _strategy, _strategy, _size, winner,
+                            _p1.enemyBoard().shotsTaken(),
+                            _p2.enemyBoard().shotsTaken(),
+                            meanTurnNanos());
+        } catch (IOException e) {
+            System.err.println("Could not record result: " + e);
+        }
+    }
 
+    /** Creates the players and has them set up their boards, reading
+     *  from INP if needed. */
+    private void setup(Scanner inp) {
+        if (_numHumans == 2) {
+            _p1 = new HumanPlayer(PLAYER1, new SelfBoard(_size), null, this);
+            _p2 = new HumanPlayer(PLAYER2, new SelfBoard(_size), null, this);
+        } else if (_numHumans == 1) {
+            _p1 = new HumanPlayer(PLAYER1, new SelfBoard(_size), null, this);
+            _p2 = new MachinePlayer(PLAYER2, new SelfBoard(_size), null, this);
+        } else {
+            _p1 = new MachinePlayer(PLAYER1, new SelfBoard(_size), null, this);
+            _p2 = new MachinePlayer(PLAYER2, new SelfBoard(_size), null, this);
+        }
+        long start = Histogram.start();
+        _p1.gameSetup(inp);
+        Metrics.SETUP.recordSince(start);
+        start = Histogram.start();
+        _p2.gameSetup(inp);
+        Metrics.SETUP.recordSince(start);
+        _p1.setEnemyBoard(new EnemyBoard(_size, _p2.myBoard()));
+        _p2.setEnemyBoard(new EnemyBoard(_size, _p1.myBoard()));
+        checkpoint();
+    }
 
+    /** Writes a snapshot of this game to its checkpoint file, if it has
+     *  one. */
+    private void checkpoint() {
+        if (_checkpoint == null) {
+            return;
+        }
+        try {
+            Snapshot.write(this, _checkpoint);
+        } catch (IOException e) {
+            System.err.println("Could not write checkpoint: " + e);
+        }
+    }
 
+    /** Has this game write a snapshot to FILE after every turn. */
+    void setCheckpoint(Path file) {
+        _checkpoint = file;
+    }
 
+    /** Has this game append its result to RESULTS when it ends. */
+    void setResults(ResultStore.Writer results) {
+        _results = results;
+    }
 
+    /** Has this game publish every shot to SPECTATORS. */
+    void setSpectators(Spectators spectators) {
+        _spectators = spectators;
+    }
 
+    /** Plays a game between two machines on boards too big to be held
+     *  square by square, using SparseFleets, SparseBoards and
+     *  SparseTargeting. */
+    void playSparse() {
+        Metrics.GAMES.incrementAndGet();
+        SparseFleet fleet1 = new SparseFleet(_size);
+        SparseFleet fleet2 = new SparseFleet(_size);
+        fleet1.placeRandomly(randomSource(PLAYER1));
+        fleet2.placeRandomly(randomSource(PLAYER2));
+        SparseBoard[] boards = {
+            new SparseBoard(fleet2), new SparseBoard(fleet1)
+        };
+        SparseTargeting[] ai = {
+            new SparseTargeting(randomSource(PLAYER1)),
+            new SparseTargeting(randomSource(PLAYER2))
+        };
+        System.out.println("   WELCOME TO BATTLESHIP");
+        Side turn = PLAYER1;
+        while (!boards[0].allSunk() && !boards[1].allSunk()) {
+            SparseBoard board = boards[turn.ordinal()];
+            long start = Histogram.start();
+            Move m = ai[turn.ordinal()].choose(board);
+            board.makeMove(m);
+            Metrics.DECIDE.recordSince(start);
+            System.out.println(turn + "::" + m);
+            turn = turn.opponent();
+        }
+        System.out.println((boards[0].allSunk() ? PLAYER1 : PLAYER2)
+                           + " wins.");
+    }
 
-
-
-    
     /** Return true iff the game is currently over.  A game is over if
      *  either player has all his ships found. */
     boolean gameOver() {
-        return board1.shipsFound() || board2.shipsFound();
+        return _p1.enemyBoard().allSunk() || _p2.enemyBoard().allSunk();
     }
 
     /** Usage report for the program. */
@@ -133,7 +270,8 @@ class Game {
         } else if (_numHumans == 1) {
             if (_aiDeployed == 0) {
                 _aiDeployed++;
-                return new MachinePlayer(p.side(), p.getGame());
+                return new MachinePlayer(p.side(), p.myBoard(),
+                                         p.enemyBoard(), this);
             } else {
                 System.out.println("All AIs have been deployed.");
                 return p;
@@ -141,7 +279,8 @@ class Game {
         } else {
             if (_aiDeployed < 2) {
                 _aiDeployed++;
-                return new MachinePlayer(p.side(), p.getGame());
+                return new MachinePlayer(p.side(), p.myBoard(),
+                                         p.enemyBoard(), this);
             } else {
                 return p;
             }
@@ -149,34 +288,180 @@ class Game {
     }
 
     /** Return the random number generator for this game. */
-    Random getRandomSource() {
+    GameRandom getRandomSource() {
         return _randomSource;
     }
 
-    /** The official game board. */
-    private MutableBoard _board;
+    /** Returns the random number generator of player SIDE, split from
+     *  this game's, so that neither player's draws disturb the other's. */
+    GameRandom randomSource(Side side) {
+        return _streams[side.ordinal()];
+    }
+
+    /** Returns player SIDE, or null if the players are not yet made. */
+    Player player(Side side) {
+        return side == PLAYER1 ? _p1 : _p2;
+    }
+
+    /** Sets the players to P1 and P2, whose boards are set up. */
+    void setPlayers(Player p1, Player p2) {
+        _p1 = p1;
+        _p2 = p2;
+    }
+
+    /** Returns the side whose turn it is. */
+    Side turn() {
+        return _turn;
+    }
+
+    /** Returns the number of turns played. */
+    int turns() {
+        return _turns;
+    }
+
+    /** Makes it SIDE's turn, after TURNS turns. */
+    void setTurn(Side side, int turns) {
+        _turn = side;
+        _turns = turns;
+    }
+
+    /** Returns the number of humans playing. */
+    int numHumans() {
+        return _numHumans;
+    }
+
+    /** Returns the number of AIs deployed by the p command. */
+    int aiDeployed() {
+        return _aiDeployed;
+    }
+
+    /** Sets the number of AIs deployed by the p command to N. */
+    void setAIDeployed(int n) {
+        _aiDeployed = n;
+    }
+
+    /** Returns the length of a side of the boards. */
+    int size() {
+        return _size;
+    }
+
+    /** Returns the way machine players choose their shots. */
+    Strategy getStrategy() {
+        return _strategy;
+    }
+
+    /** Has machine players choose their shots by STRATEGY. */
+    void setStrategy(Strategy strategy) {
+        _strategy = strategy;
+    }
+
+    /** Returns true iff machine players lay out their fleets to be hard
+     *  to hit (FleetPlanner) rather than at random. */
+    boolean hardFleets() {
+        return _hardFleets;
+    }
+
+    /** Has machine players lay out their fleets to be hard to hit iff
+     *  HARD. */
+    void setHardFleets(boolean hard) {
+        _hardFleets = hard;
+    }
+
+    /** Returns true iff the game is played by the salvo rules, under
+     *  which a player fires one shot a turn for each of its ships still
+     *  afloat. */
+    boolean salvo() {
+        return _salvo;
+    }
+
+    /** Plays the game by the salvo rules iff SALVO. */
+    void setSalvo(boolean salvo) {
+        _salvo = salvo;
+    }
+
+    /** Returns the number of shots SIDE fires this turn: one, or under
+     *  the salvo rules one for each of its ships still afloat, but no
+     *  more than the squares left to shoot at. */
+    int shotsAllowed(Side side) {
+        if (!_salvo) {
+            return 1;
+        }
+        int afloat = player(side.opponent()).enemyBoard().shipsAfloat();
+        Board target = player(side).enemyBoard();
+        int free = target.size() * target.size() - target.shotsTaken();
+        return Math.max(1, Math.min(afloat, free));
+    }
+
+    /** Returns the debugging parameter. */
+    int debug() {
+        return _debug;
+    }
+
+    /** The first player. */
+    private Player _p1;
+
+    /** The second player. */
+    private Player _p2;
 
     /** A source of random numbers, primed to deliver the same sequence in
      *  any Game with the same seed value. */
-    private Random _randomSource;
+    private GameRandom _randomSource;
+
+    /** By side, the random number generators of the players. */
+    private GameRandom[] _streams = new GameRandom[Side.values().length];
 
     /** Returns _time. */
     float getTime() {
         return _time;
     }
 
+    /** Returns the seed this game was made with. */
+    long seed() {
+        return _seed;
+    }
+
     /** The max time limit for each turn, in minutes. */
     private float _time;
 
     /** The debugging parameter specified in Main. */
     private int _debug;
 
-    /** The side "you" are on. */
-    private Side _side;
+    /** The size of the boards. */
+    private int _size;
 
     /** Number of humans playing. */
     private int _numHumans;
 
     /** Number of AIs deployed. */
     private int _aiDeployed;
+
+    /** The way machine players choose their shots. */
+    private Strategy _strategy = Strategy.DENSITY;
+
+    /** True iff machine players lay out their fleets with FleetPlanner. */
+    private boolean _hardFleets;
+    /** True iff the game is played by the salvo rules. */
+    private boolean _salvo;
+
+    /** The side whose turn it is. */
+    private Side _turn = PLAYER1;
+
+    /** The number of turns played. */
+    private int _turns;
+
+    /** Where to write a snapshot after each turn, or null. */
+    private Path _checkpoint;
+
+    /** Who to publish each shot to, or null. */
+    private Spectators _spectators;
+
+    /** Where to append the result of this game, or null. */
+    private ResultStore.Writer _results;
+
+    /** The seed this game was made with. */
+    private long _seed;
+
+    /** The time taken by the turns played in this run, in
+     *  nanoseconds. */
+    private long _turnNanos;
 }
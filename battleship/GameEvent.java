@@ -0,0 +1,32 @@
+package battleship;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** A flight-recorder event spanning one game, from setup to the last shot.
+ *  @author Andrew Fang */
+@Name("battleship.Game")
+@Label("Game")
+@Category("Battleship")
+@Description("One game of Battleship")
+class GameEvent extends Event {
+
+    /** The length of a side of the boards. */
+    @Label("Board Size")
+    int boardSize;
+
+    /** The number of human players. */
+    @Label("Humans")
+    int humans;
+
+    /** The number of turns played. */
+    @Label("Turns")
+    int turns;
+
+    /** The side that won. */
+    @Label("Winner")
+    String winner;
+}
@@ -0,0 +1,73 @@
+package battleship;
+
+import java.util.Random;
+
+/** A splittable stream of random numbers whose state can be read and
+ *  restored, so that a game can be saved and resumed with the same
+ *  sequence of random numbers.  The numbers are those of the SplitMix64
+ *  generator, whose state is a single counter.
+ *
+ *  A stream hands out independent child streams with split, keyed by a
+ *  number rather than by the order of the calls, so that a hierarchy of
+ *  streams rooted at the --seed value (one per game, per player, per
+ *  chunk of work) draws the same numbers however many threads share the
+ *  work.  A stream is not safe for use by several threads at once; give
+ *  each thread its own.
+ *  @author Andrew Fang */
+class GameRandom extends Random {
+
+    /** A GameRandom primed with SEED. */
+    GameRandom(long seed) {
+        super(seed);
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        _state = mix(seed);
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (Long.SIZE - bits));
+    }
+
+    @Override
+    public long nextLong() {
+        _state += GAMMA;
+        return mix(_state);
+    }
+
+    /** Returns a new stream determined by this stream's state and KEY.
+     *  It draws nothing from this stream, so splitting twice with the same
+     *  key before drawing gives the same stream. */
+    GameRandom split(long key) {
+        return new GameRandom(_state ^ mix(key + GAMMA));
+    }
+
+    /** Returns the internal state of this generator. */
+    long state() {
+        return _state;
+    }
+
+    /** Sets the internal state of this generator to STATE, a value of
+     *  state(). */
+    void setState(long state) {
+        _state = state;
+    }
+
+    /** Returns Z with its bits thoroughly mixed (the SplitMix64
+     *  finalizer). */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /** The step of the counter: the odd number nearest 2**64 divided by
+     *  the golden ratio. */
+    private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+    /** The state.  It has no initializer because Random's constructor
+     *  sets it (through setSeed) before this class's initializers run. */
+    private long _state;
+}
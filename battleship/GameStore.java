@@ -0,0 +1,344 @@
+package battleship;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import static battleship.Piece.*;
+import static battleship.Side.*;
+
+/** A store for a great many games on NxN boards, kept outside the Java
+ *  heap.  Each game takes one fixed-size slot of a direct buffer holding,
+ *  for each side, a bit mask of the shots it has received, a bit mask of
+ *  the squares its ships cover, where each ship lies, the damage to each
+ *  ship and the time its clock has used.  A game on a 10x10 board takes
+ *  112 bytes, and no objects.  A View is a reusable Board over any one
+ *  side of any one slot.  BatchSim keeps its games here.
+ *  @author Andrew Fang */
+class GameStore {
+
+    /** A store with room for CAPACITY games on SIZExSIZE boards.  Throws
+     *  IllegalArgumentException if CAPACITY games would not fit in one
+     *  buffer. */
+    GameStore(int size, int capacity) {
+        assert size > 0 && size * size < Short.MAX_VALUE / 2;
+        _size = size;
+        _capacity = capacity;
+        int words = (size * size + Long.SIZE - 1) / Long.SIZE;
+        _occupied = words * Long.BYTES;
+        _ships = 2 * _occupied;
+        _damage = _ships + FLEETSIZE * Short.BYTES;
+        _clock = (_damage + FLEETSIZE + Integer.BYTES - 1)
+            / Integer.BYTES * Integer.BYTES;
+        _sideStride = (_clock + Integer.BYTES + Long.BYTES - 1)
+            / Long.BYTES * Long.BYTES;
+        _stride = 2 * _sideStride;
+        _words = words;
+        if (capacity < 0 || capacity > Integer.MAX_VALUE / _stride) {
+            throw new IllegalArgumentException(
+                String.format("room for at most %d games on %dx%d boards,"
+                              + " not %d", Integer.MAX_VALUE / _stride,
+                              size, size, capacity));
+        }
+        _data = ByteBuffer.allocateDirect(capacity * _stride)
+            .order(ByteOrder.nativeOrder());
+    }
+
+    /** Returns the number of bytes a game on a SIZExSIZE board takes. */
+    static int bytesPerGame(int size) {
+        return new GameStore(size, 0)._stride;
+    }
+
+    /** Returns the length of a side of the boards in this store. */
+    int size() {
+        return _size;
+    }
+
+    /** Returns the number of games in this store. */
+    int games() {
+        return _games;
+    }
+
+    /** Adds a new game with no ships placed and no shots taken, and
+     *  returns its slot. */
+    int add() {
+        if (_games == _capacity) {
+            throw new IllegalStateException("game store is full");
+        }
+        int slot = _games;
+        _games += 1;
+        int base = slot * _stride;
+        for (int k = 0; k < _stride; k += Long.BYTES) {
+            _data.putLong(base + k, 0);
+        }
+        return slot;
+    }
+
+    /** Removes every game from this store. */
+    void clear() {
+        _games = 0;
+    }
+
+    /** Copies the fleet of SIDE in game SLOT from BOARD, replacing any
+     *  ships already placed there. */
+    void place(int slot, Side side, SelfBoard board) {
+        int base = base(slot, side);
+        for (int k = _occupied; k < _damage; k++) {
+            _data.put(base + k, (byte) 0);
+        }
+        Shipname[][] config = board.getConfig();
+        for (Shipname ship : MachinePlayer.FLEET) {
+            found:
+            for (int r = 0; r < _size; r++) {
+                for (int c = 0; c < _size; c++) {
+                    if (config[r][c] == ship) {
+                        boolean vertical = r + 1 < _size
+                            && config[r + 1][c] == ship;
+                        place(slot, side, ship, c + 1, r + 1, vertical);
+                        break found;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Places the fleet of SIDE in game SLOT at random, using RAND. */
+    void placeRandomly(int slot, Side side, Random rand) {
+        for (Shipname ship : MachinePlayer.FLEET) {
+            while (!place(slot, side, ship, 1 + rand.nextInt(_size),
+                          1 + rand.nextInt(_size), rand.nextBoolean())) {
+                continue;
+            }
+        }
+    }
+
+    /** Places SHIP of SIDE in game SLOT with its top left at COL, ROW,
+     *  running down if VERTICAL and right otherwise.  Returns false, and
+     *  places nothing, if it would run off the board or onto another
+     *  ship. */
+    boolean place(int slot, Side side, Shipname ship, int col, int row,
+                  boolean vertical) {
+        int len = ship.size();
+        int c0 = col - 1, r0 = row - 1;
+        if ((vertical ? r0 + len : c0 + len) > _size) {
+            return false;
+        }
+        int base = base(slot, side);
+        for (int k = 0; k < len; k++) {
+            int cell = vertical ? (r0 + k) * _size + c0 : r0 * _size + c0 + k;
+            if (shipAt(base, cell) >= 0) {
+                return false;
+            }
+        }
+        for (int k = 0; k < len; k++) {
+            int cell = vertical ? (r0 + k) * _size + c0 : r0 * _size + c0 + k;
+            int at = base + _occupied + (cell >>> 6) * Long.BYTES;
+            _data.putLong(at, _data.getLong(at) | 1L << (cell & 63));
+        }
+        int code = ((r0 * _size + c0) << 1 | (vertical ? 1 : 0)) + 1;
+        _data.putShort(base + _ships + INDEX[ship.ordinal()] * Short.BYTES,
+                       (short) code);
+        return true;
+    }
+
+    /** Writes what ATTACKER knows of its opponent's board in game SLOT
+     *  into the SIZE*SIZE squares of DEST starting at BASE, in rows, as
+     *  BatchSim.UNKNOWN, MISS and HIT. */
+    void known(int slot, Side attacker, byte[] dest, int base) {
+        int from = base(slot, attacker.opponent());
+        int cells = _size * _size;
+        for (int w = 0; w < _words; w++) {
+            long shots = _data.getLong(from + w * Long.BYTES);
+            long ships = _data.getLong(from + _occupied + w * Long.BYTES);
+            int end = Math.min(Long.SIZE, cells - w * Long.SIZE);
+            for (int k = 0; k < end; k++) {
+                long bit = 1L << k;
+                dest[base + w * Long.SIZE + k] = (shots & bit) == 0
+                    ? BatchSim.UNKNOWN
+                    : (ships & bit) == 0 ? BatchSim.MISS : BatchSim.HIT;
+            }
+        }
+    }
+
+    /** Has ATTACKER shoot at square CELL, numbered by rows from 0, in game
+     *  SLOT, which must not have been shot at.  Returns true iff it hit a
+     *  ship. */
+    boolean fire(int slot, Side attacker, int cell) {
+        return shoot(base(slot, attacker.opponent()), cell);
+    }
+
+    /** Records a shot at square CELL of the record at BASE, and returns
+     *  true iff it hit a ship. */
+    private boolean shoot(int base, int cell) {
+        int at = base + (cell >>> 6) * Long.BYTES;
+        long bit = 1L << (cell & 63);
+        _data.putLong(at, _data.getLong(at) | bit);
+        if ((_data.getLong(at + _occupied) & bit) == 0) {
+            return false;
+        }
+        at = base + _damage + shipAt(base, cell);
+        _data.put(at, (byte) (_data.get(at) + 1));
+        return true;
+    }
+
+    /** Returns the milliseconds used by the clock of SIDE in game SLOT. */
+    int clock(int slot, Side side) {
+        return _data.getInt(base(slot, side) + _clock);
+    }
+
+    /** Adds MILLIS milliseconds to the clock of SIDE in game SLOT. */
+    void addClock(int slot, Side side, int millis) {
+        int at = base(slot, side) + _clock;
+        _data.putInt(at, _data.getInt(at) + millis);
+    }
+
+    /** Returns a new View, not yet on any game. */
+    View view() {
+        return new View();
+    }
+
+    /** Returns the offset of the record of SIDE in game SLOT. */
+    private int base(int slot, Side side) {
+        return slot * _stride + (side == PLAYER1 ? 0 : _sideStride);
+    }
+
+    /** Returns the index in FLEET of the ship of the record at BASE
+     *  covering square CELL (numbered by rows from 0), or -1 if there is
+     *  none. */
+    private int shipAt(int base, int cell) {
+        int r = cell / _size, c = cell % _size;
+        for (int s = 0; s < FLEETSIZE; s++) {
+            int code = _data.getShort(base + _ships + s * Short.BYTES) - 1;
+            if (code < 0) {
+                continue;
+            }
+            int start = code >> 1;
+            int r0 = start / _size, c0 = start % _size;
+            int len = MachinePlayer.FLEET[s].size();
+            if ((code & 1) == 1) {
+                if (c == c0 && r >= r0 && r < r0 + len) {
+                    return s;
+                }
+            } else if (r == r0 && c >= c0 && c < c0 + len) {
+                return s;
+            }
+        }
+        return -1;
+    }
+
+    /** A Board showing what one side knows of its opponent's board in one
+     *  game of the store.  It holds no state of its own, so one View can
+     *  be moved over any number of games. */
+    class View extends Board {
+
+        /** Makes this a view of game SLOT as seen by ATTACKER, and returns
+         *  it. */
+        View at(int slot, Side attacker) {
+            _base = base(slot, attacker.opponent());
+            return this;
+        }
+
+        @Override
+        public int size() {
+            return _size;
+        }
+
+        @Override
+        public Piece get(int col, int row) {
+            int cell = (row - 1) * _size + col - 1;
+            if (!shot(cell)) {
+                return UNKNOWN;
+            }
+            long word = _data.getLong(_base + _occupied
+                                      + (cell >>> 6) * Long.BYTES);
+            return (word & 1L << (cell & 63)) != 0 ? HIT : MISS;
+        }
+
+        @Override
+        void makeMove(Move m) {
+            int cell = (m.getRow() - 1) * _size + m.getCol() - 1;
+            if (shot(cell)) {
+                System.out.println("Illegal Move");
+                return;
+            }
+            shoot(_base, cell);
+        }
+
+        @Override
+        public int shotsTaken() {
+            int count = 0;
+            for (int w = 0; w < _words; w++) {
+                count += Long.bitCount(_data.getLong(_base + w * Long.BYTES));
+            }
+            return count;
+        }
+
+        @Override
+        public int hits() {
+            int count = 0;
+            for (int s = 0; s < FLEETSIZE; s++) {
+                count += _data.get(_base + _damage + s);
+            }
+            return count;
+        }
+
+        @Override
+        public boolean sunk(Shipname ship) {
+            return _data.get(_base + _damage + INDEX[ship.ordinal()])
+                == ship.size();
+        }
+
+        @Override
+        public boolean allSunk() {
+            for (Shipname ship : MachinePlayer.FLEET) {
+                if (!sunk(ship)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Returns true iff square CELL has been shot at. */
+        private boolean shot(int cell) {
+            long word = _data.getLong(_base + (cell >>> 6) * Long.BYTES);
+            return (word & 1L << (cell & 63)) != 0;
+        }
+
+        /** The offset of the record of the side being shot at. */
+        private int _base;
+    }
+
+    /** The number of ships in a fleet. */
+    static final int FLEETSIZE = MachinePlayer.FLEET.length;
+
+    /** By Shipname ordinal, the index of the ship in FLEET, under which
+     *  its placement and damage are stored, or -1. */
+    private static final int[] INDEX = fleetIndex();
+
+    /** Returns the table for INDEX. */
+    private static int[] fleetIndex() {
+        int[] index = new int[Shipname.values().length];
+        Arrays.fill(index, -1);
+        for (int s = 0; s < FLEETSIZE; s++) {
+            index[MachinePlayer.FLEET[s].ordinal()] = s;
+        }
+        return index;
+    }
+
+    /** The length of a side of the boards. */
+    private final int _size;
+    /** The number of games there is room for. */
+    private final int _capacity;
+    /** The number of games stored. */
+    private int _games;
+    /** The number of longs in a shot mask. */
+    private final int _words;
+    /** Offsets within a side's record of the mask of squares its ships
+     *  cover, its ship placements, their damage and its clock. */
+    private final int _occupied, _ships, _damage, _clock;
+    /** The bytes taken by one side, and by one game. */
+    private final int _sideStride, _stride;
+    /** The games. */
+    private final ByteBuffer _data;
+}
@@ -0,0 +1,126 @@
+package battleship;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** A latency histogram with one bucket per power of two nanoseconds.
+ *  Its memory is fixed when it is made, and recording a sample is a
+ *  few atomic adds, so it neither locks nor allocates.
+ *  @author Andrew Fang */
+class Histogram implements HistogramMBean {
+
+    /** A new, empty Histogram called NAME. */
+    Histogram(String name) {
+        _name = name;
+        _buckets = new AtomicLongArray(BUCKETS);
+        _total = new AtomicLong();
+        _max = new AtomicLong();
+    }
+
+    /** Returns the nanosecond clock reading to pass to recordSince. */
+    static long start() {
+        return System.nanoTime();
+    }
+
+    /** Records the time elapsed since START, a value of start(). */
+    void recordSince(long start) {
+        record(System.nanoTime() - start);
+    }
+
+    /** Records one sample of NANOS nanoseconds. */
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        _buckets.incrementAndGet(bucket(nanos));
+        _total.addAndGet(nanos);
+        long max = _max.get();
+        while (nanos > max && !_max.compareAndSet(max, nanos)) {
+            max = _max.get();
+        }
+    }
+
+    /** Returns the bucket holding NANOS: bucket K holds samples
+     *  in [2**(K-1), 2**K). */
+    static int bucket(long nanos) {
+        return Long.SIZE - Long.numberOfLeadingZeros(nanos);
+    }
+
+    /** Returns the name of this histogram. */
+    String name() {
+        return _name;
+    }
+
+    @Override
+    public long getCount() {
+        long count = 0;
+        for (int k = 0; k < BUCKETS; k++) {
+            count += _buckets.get(k);
+        }
+        return count;
+    }
+
+    @Override
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) _total.get() / count;
+    }
+
+    @Override
+    public long getMax() {
+        return _max.get();
+    }
+
+    @Override
+    public long getP50() {
+        return percentile(0.5);
+    }
+
+    @Override
+    public long getP99() {
+        return percentile(0.99);
+    }
+
+    /** Returns the upper bound of the bucket holding the FRACTION
+     *  quantile of the samples, or 0 if there are none. */
+    long percentile(double fraction) {
+        long rank = (long) Math.ceil(fraction * getCount());
+        long seen = 0;
+        for (int k = 0; k < BUCKETS; k++) {
+            seen += _buckets.get(k);
+            if (seen >= rank && seen > 0) {
+                return k == BUCKETS - 1 ? Long.MAX_VALUE : 1L << k;
+            }
+        }
+        return 0;
+    }
+
+    /** Clears all samples. */
+    void reset() {
+        for (int k = 0; k < BUCKETS; k++) {
+            _buckets.set(k, 0);
+        }
+        _total.set(0);
+        _max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-10s n=%d mean=%.0fns p50<%dns p99<%dns"
+                             + " max=%dns", _name, getCount(), getMean(),
+                             getP50(), getP99(), getMax());
+    }
+
+    /** The number of buckets: one for 0 and one per bit of a
+     *  non-negative long. */
+    static final int BUCKETS = Long.SIZE;
+
+    /** The name of this histogram. */
+    private final String _name;
+    /** The number of samples in each bucket. */
+    private final AtomicLongArray _buckets;
+    /** The sum of all samples. */
+    private final AtomicLong _total;
+    /** The largest sample. */
+    private final AtomicLong _max;
+}
@@ -0,0 +1,21 @@
+package battleship;
+
+/** The management interface of a Histogram.
+ *  @author Andrew Fang */
+public interface HistogramMBean {
+
+    /** Returns the number of samples recorded. */
+    long getCount();
+
+    /** Returns the mean sample, in nanoseconds. */
+    double getMean();
+
+    /** Returns the largest sample, in nanoseconds. */
+    long getMax();
+
+    /** Returns an upper bound on the median sample, in nanoseconds. */
+    long getP50();
+
+    /** Returns an upper bound on the 99th percentile, in nanoseconds. */
+    long getP99();
+}
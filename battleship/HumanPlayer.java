@@ -1,45 +1,54 @@
-package loa;
+package battleship;
 
 import java.util.Scanner;
-import static loa.Bio.*;
-import static loa.Side.*;
+import static battleship.Bio.*;
 
 /** A Player that prompts for moves and reads them from its Game.
  *  @author Andrew Fang*/
 class HumanPlayer extends Player {
 
-    /** A HumanPlayer that plays the SIDE pieces in GAME.  It uses
-     *  GAME.getMove() as a source of moves.  */
-    HumanPlayer(Side side, Game game) {
-        super(side, game);
+    /** A HumanPlayer that plays SIDE in GAME with its own board SELF
+     *  and its view OPPONENT of the other player's board. */
+    HumanPlayer(Side side, SelfBoard self, EnemyBoard opponent, Game game) {
+        super(side, self, opponent, game);
         setBio(HUMAN);
     }
 
     @Override void gameSetup(Scanner inp) {
-	String placement = "";
-	Sysetm.out.println("Where would you like to put your Battleship(5)?");
-	placement = inp.next();
-	Coordniate
-	myBoard().place(new Ship(BATTLESHIP), 
-	    
+        for (Shipname name : MachinePlayer.FLEET) {
+            Ship ship = new Ship(name);
+            boolean placed = false;
+            while (!placed) {
+                System.out.println(myBoard());
+                System.out.printf("Where would you like to put your %s(%d)?%n",
+                                  name.toString().toLowerCase(), ship.size());
+                Coordinate coord = new Coordinate(inp.next());
+                if (!coord.legal() || ship.size() != coord.length()) {
+                    myBoard().place(ship, coord);
+                } else if (!myBoard().isOpen(coord)) {
+                    System.out.println("That spot is taken or off the board.");
+                } else {
+                    myBoard().place(ship, coord);
+                    placed = true;
+                }
+            }
+        }
+        inp.nextLine();
+    }
 
     @Override boolean decide(Scanner inp) {
         boolean done = false;
         String command;
-        String moveregex = "[A-Ha-h][1-8]-[A-Ha-h][1-8]";
+        String moveregex = "[A-Za-z]+\\d+";
         while (!done) {
             stopwatch().start();
             System.out.print("");
-            command = inp.nextLine();
+            command = inp.nextLine().trim();
             stopwatch().stop();
             if (isOn()) {
                 if (stopwatch().getAccum() / THOU > getGame().getTime() * SEC) {
                     System.out.println("   You ran out of time.");
-                    if (side() == WHITE) {
-                        System.out.println("Black wins.");
-                    } else {
-                        System.out.println("White wins.");
-                    }
+                    System.out.println(side().opponent() + " wins.");
                     System.exit(0);
                 }
             } else {
@@ -59,40 +68,64 @@ class HumanPlayer extends Player {
                                    * SEC - stopwatch().getAccum() / THOU);
             } else if (command.charAt(0) == '#') {
                 System.out.print("");
-            } else if ((command.length() > 4)
-                       && command.substring(0, 5).matches(moveregex)) {
-                Move m = Move.create(command.substring(0, 5));
-                getBoard().makeMove(m);
-                done = true;
+            } else if (getGame().salvo()
+                       && command.matches(moveregex + "(\\s+" + moveregex
+                                          + ")*")) {
+                done = fireSalvo(command.split("\\s+"));
+            } else if (command.matches(moveregex)) {
+                Move m = Move.create(command);
+                if (m.getCol() < 1 || m.getCol() > enemyBoard().size()
+                    || m.getRow() < 1 || m.getRow() > enemyBoard().size()
+                    || !enemyBoard().isLegal(m)) {
+                    System.out.println("Illegal Move");
+                } else {
+                    enemyBoard().makeMove(m);
+                    done = true;
+                }
             } else {
                 usage();
             }
             if (!done) {
-                System.out.print(getBoard().turn() + "> ");
+                System.out.print(side() + "> ");
                 System.out.flush();
             }
         }
         return false;
     }
 
+    /** Fires the squares named by CELLS as a salvo, if they are as many
+     *  as this turn allows.  Returns true iff they were fired. */
+    boolean fireSalvo(String[] cells) {
+        int allowed = getGame().shotsAllowed(side());
+        if (cells.length != allowed) {
+            System.out.println("Fire " + allowed + " shots.");
+            return false;
+        }
+        Move[] shots = new Move[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            shots[i] = Move.create(cells[i]);
+        }
+        return enemyBoard().fire(shots) != null;
+    }
+
     /** Performs the s command. */
     void sCommand() {
         System.out.println("===");
-        System.out.println(getBoard());
-        System.out.print("Next move: ");
-        System.out.println(getBoard().turn());
-        System.out.printf("Moves: %d%n", getBoard().movesMade());
+        System.out.println(enemyBoard());
+        System.out.println("---");
+        System.out.println(myBoard());
         System.out.println("===");
     }
 
     /** Usage report for the program. */
     void usage() {
         System.out.println("   Commands:\tEffects:");
-        System.out.println("   s\t\tShows the board, side, # of moves.");
+        System.out.println("   s\t\tShows the enemy board and your own.");
         System.out.println("   p\t\tStarts any AI if specified.");
         System.out.println("   t\t\tShows your remaining time");
         System.out.println("   q\t\tQuits the program. Ends game.");
-        System.out.println("   c1r1-c2r2\tMove piece c1r1 to c2r2 (eg, b8-b6)");
+        System.out.println("   cr\t\tFires at column c, row r (eg, b8)");
+        System.out.println("   cr cr ...\tFires a salvo (eg, b8 c2 j10)");
         String a = "   #\t\tAnything following this is a comment.";
         System.out.println(a + " Ignored.");
     }
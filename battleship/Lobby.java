@@ -0,0 +1,424 @@
+package battleship;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Pairs players who join a game server into games.  Players wait in
+ *  buckets by board size and time limit, each bucket a lock-free queue,
+ *  oldest first.  Two players are paired if their ratings are within
+ *  both their rating windows; a player's window starts at BASEWINDOW and
+ *  widens by WIDENING a second as it waits, up to MAXWINDOW.  A player
+ *  who will play a machine and has waited longer than the lobby's fill
+ *  time is given one instead, and a player who wants a machine gets one
+ *  at once.  The games made are Games of two humans, or of one human and
+ *  a MachinePlayer; their seeds are split from the lobby's seed.
+ *
+ *  Nothing locks.  A waiting player is claimed by a compare-and-set on
+ *  its ticket's state, so a player is paired at most once however many
+ *  threads look at it; to pair two waiting players, a thread claims the
+ *  one who joined first and then the other, and lets the first go again
+ *  if the second is taken.  A joining player looks through its bucket
+ *  for a partner, and if there is none, queues and looks once more, in
+ *  case another joined at the same moment.  A sweeper thread pairs the
+ *  players whose windows have since widened to meet, fills in machines,
+ *  and drops finished tickets from the queues.
+ *
+ *  The lobby publishes in Metrics the players joined and waiting, the
+ *  games made each way, and a histogram of the time players wait.
+ *  @author Andrew Fang */
+final class Lobby implements Closeable {
+
+    /** Who a player will play. */
+    enum Preference {
+        /** Only another human. */
+        HUMAN,
+        /** A human, or a machine if none is found in time. */
+        ANY,
+        /** A machine, at once. */
+        MACHINE
+    }
+
+    /** A lobby whose games have seeds split from SEED, and which gives a
+     *  player willing to play a machine one after FILLMILLIS
+     *  milliseconds without a human partner. */
+    Lobby(long seed, long fillMillis) {
+        _seeds = new GameRandom(seed);
+        _fillNanos = TimeUnit.MILLISECONDS.toNanos(fillMillis);
+        _sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "lobby-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        _sweeper.scheduleWithFixedDelay(this::sweep, SWEEP, SWEEP,
+                                        TimeUnit.MILLISECONDS);
+    }
+
+    /** Has the player NAME, of rating RATING, join to play on SIZExSIZE
+     *  boards with TIME minutes on each clock, against whom PREFERENCE
+     *  allows, and returns its ticket. */
+    Ticket join(String name, int size, float time, int rating,
+                Preference preference) {
+        Metrics.JOINS.incrementAndGet();
+        Ticket t =
+            new Ticket(name, rating, preference, _ids.incrementAndGet());
+        if (preference == Preference.MACHINE) {
+            t._state.set(CLAIMED);
+            fill(t, size, time);
+            return t;
+        }
+        Bucket b = _buckets.computeIfAbsent(key(size, time),
+                                            k -> new Bucket(size, time));
+        t._bucket = b;
+        Ticket partner = find(b, t, false, System.nanoTime());
+        if (partner != null) {
+            t._state.set(CLAIMED);
+            pair(partner, t);
+            return t;
+        }
+        t._queued = true;
+        b._waiting.incrementAndGet();
+        Metrics.WAITING.incrementAndGet();
+        b._queue.add(t);
+        partner = find(b, t, true, System.nanoTime());
+        if (partner != null) {
+            pair(partner, t);
+        }
+        return t;
+    }
+
+    /** Returns the number of players waiting to play on SIZExSIZE boards
+     *  with TIME minutes on each clock. */
+    int waiting(int size, float time) {
+        Bucket b = _buckets.get(key(size, time));
+        return b == null ? 0 : b._waiting.get();
+    }
+
+    /** Stops the sweeper.  Players still waiting stay unpaired. */
+    @Override
+    public void close() {
+        _sweeper.shutdownNow();
+    }
+
+    /** Returns and claims a waiting player of B other than T that T can
+     *  play at time NOW (as from System.nanoTime), looking at no more
+     *  than SCANLIMIT players, or null if there is none.  If QUEUED, T is
+     *  in B's queue and is claimed too; otherwise only its partner is. */
+    private static Ticket find(Bucket b, Ticket t, boolean queued,
+                               long now) {
+        int looked = 0;
+        for (Iterator<Ticket> it = b._queue.iterator();
+             it.hasNext() && looked < SCANLIMIT;) {
+            Ticket u = it.next();
+            int state = u._state.get();
+            if (state == DONE || state == CANCELLED) {
+                it.remove();
+                continue;
+            }
+            if (u == t || state != WAITING) {
+                continue;
+            }
+            looked += 1;
+            if (!compatible(t, u, now)) {
+                continue;
+            }
+            if (queued ? claimBoth(t, u) : u.claim()) {
+                return u;
+            }
+            if (queued && t._state.get() != WAITING) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /** Returns true iff the ratings of A and B are within both their
+     *  windows at time NOW. */
+    private static boolean compatible(Ticket a, Ticket b, long now) {
+        return Math.abs(a._rating - b._rating)
+            <= Math.min(window(a, now), window(b, now));
+    }
+
+    /** Returns the rating window of T at time NOW. */
+    static int window(Ticket t, long now) {
+        long waited = TimeUnit.NANOSECONDS.toMillis(now - t._joined);
+        return (int) Math.min(MAXWINDOW,
+                              BASEWINDOW + WIDENING * waited / 1000);
+    }
+
+    /** Claims waiting players A and B, the one who joined first first, or
+     *  neither.  Returns true iff it claimed both. */
+    private static boolean claimBoth(Ticket a, Ticket b) {
+        Ticket first = a._id < b._id ? a : b;
+        Ticket second = first == a ? b : a;
+        if (!first.claim()) {
+            return false;
+        }
+        if (!second.claim()) {
+            first._state.set(WAITING);
+            return false;
+        }
+        return true;
+    }
+
+    /** Makes a game between the claimed players A and B. */
+    private void pair(Ticket a, Ticket b) {
+        Bucket bucket = a._bucket;
+        Match m = new Match(a, b, newGame(2, bucket._size, bucket._time));
+        Metrics.MATCHES.incrementAndGet();
+        a.finish(m);
+        b.finish(m);
+    }
+
+    /** Makes a game between the claimed player T and a machine, on
+     *  SIZExSIZE boards with TIME minutes on each clock. */
+    private void fill(Ticket t, int size, float time) {
+        Match m = new Match(t, null, newGame(1, size, time));
+        Metrics.FILLS.incrementAndGet();
+        t.finish(m);
+    }
+
+    /** Returns a new game for HUMANS humans on SIZExSIZE boards with TIME
+     *  minutes on each clock. */
+    private Game newGame(int humans, int size, float time) {
+        long seed = _seeds.split(_games.getAndIncrement()).nextLong();
+        return new Game(humans, seed, time, size, 0);
+    }
+
+    /** Pairs the waiting players of every bucket whose windows have
+     *  widened to meet, and fills in machines for those who have waited
+     *  too long. */
+    private void sweep() {
+        for (Bucket b : _buckets.values()) {
+            long now = System.nanoTime();
+            List<Ticket> waiting = new ArrayList<>();
+            for (Iterator<Ticket> it = b._queue.iterator(); it.hasNext();) {
+                Ticket t = it.next();
+                int state = t._state.get();
+                if (state == DONE || state == CANCELLED) {
+                    it.remove();
+                } else if (state == WAITING) {
+                    waiting.add(t);
+                }
+            }
+            for (int i = 0; i < waiting.size(); i++) {
+                Ticket t = waiting.get(i);
+                if (t._state.get() != WAITING) {
+                    continue;
+                }
+                if (t._preference == Preference.ANY
+                    && now - t._joined >= _fillNanos) {
+                    if (t.claim()) {
+                        fill(t, b._size, b._time);
+                    }
+                    continue;
+                }
+                int end = Math.min(waiting.size(), i + 1 + SCANLIMIT);
+                for (int j = i + 1; j < end; j++) {
+                    Ticket u = waiting.get(j);
+                    if (u._state.get() == WAITING && compatible(t, u, now)
+                        && claimBoth(t, u)) {
+                        pair(t, u);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Returns the key of the bucket of SIZExSIZE boards with TIME
+     *  minutes on each clock. */
+    private static long key(int size, float time) {
+        return (long) size << Integer.SIZE
+            | Float.floatToIntBits(time) & 0xFFFFFFFFL;
+    }
+
+    /** A player's place in the lobby. */
+    static final class Ticket {
+
+        /** The ticket of the player NAME, of rating RATING, who will play
+         *  whom PREFERENCE allows, the IDth to join. */
+        private Ticket(String name, int rating, Preference preference,
+                       long id) {
+            _name = name;
+            _rating = rating;
+            _preference = preference;
+            _id = id;
+            _joined = System.nanoTime();
+        }
+
+        /** Returns the player's name. */
+        String name() {
+            return _name;
+        }
+
+        /** Returns the player's rating. */
+        int rating() {
+            return _rating;
+        }
+
+        /** Returns the player's match, completed when it is made. */
+        CompletableFuture<Match> match() {
+            return _match;
+        }
+
+        /** Takes the player out of the lobby.  Returns false if it was
+         *  already paired (or had left). */
+        boolean cancel() {
+            while (true) {
+                int state = _state.get();
+                if (state == WAITING) {
+                    if (_state.compareAndSet(WAITING, CANCELLED)) {
+                        leave();
+                        _match.cancel(false);
+                        return true;
+                    }
+                } else if (state == CLAIMED) {
+                    Thread.onSpinWait();
+                } else {
+                    return false;
+                }
+            }
+        }
+
+        /** Claims this player if it is waiting.  Returns true iff it
+         *  did. */
+        private boolean claim() {
+            return _state.compareAndSet(WAITING, CLAIMED);
+        }
+
+        /** Completes this claimed player's match with M. */
+        private void finish(Match m) {
+            Metrics.LOBBYWAIT.recordSince(_joined);
+            leave();
+            _state.set(DONE);
+            _match.complete(m);
+        }
+
+        /** Counts this player out of its queue, if it was in one. */
+        private void leave() {
+            if (_queued) {
+                _bucket._waiting.decrementAndGet();
+                Metrics.WAITING.decrementAndGet();
+            }
+        }
+
+        /** The player's name. */
+        private final String _name;
+        /** The player's rating. */
+        private final int _rating;
+        /** Whom the player will play. */
+        private final Preference _preference;
+        /** The order in which the player joined. */
+        private final long _id;
+        /** When the player joined, as from System.nanoTime. */
+        private final long _joined;
+        /** WAITING, CLAIMED, DONE or CANCELLED. */
+        private final AtomicInteger _state = new AtomicInteger(WAITING);
+        /** The player's match, once made. */
+        private final CompletableFuture<Match> _match =
+            new CompletableFuture<>();
+        /** The bucket the player waits in, or null. */
+        private Bucket _bucket;
+        /** True iff the player was put in its bucket's queue. */
+        private boolean _queued;
+    }
+
+    /** A game made by the lobby. */
+    static final class Match {
+
+        /** The game GAME between the players of tickets FIRST and SECOND,
+         *  or a machine if SECOND is null. */
+        private Match(Ticket first, Ticket second, Game game) {
+            _first = first;
+            _second = second;
+            _game = game;
+        }
+
+        /** Returns the ticket of the first player. */
+        Ticket first() {
+            return _first;
+        }
+
+        /** Returns the ticket of the second player, or null if the first
+         *  plays a machine. */
+        Ticket second() {
+            return _second;
+        }
+
+        /** Returns the game, not yet set up: a Game of two humans, or of
+         *  one human and a MachinePlayer. */
+        Game game() {
+            return _game;
+        }
+
+        /** The first player. */
+        private final Ticket _first;
+        /** The second player, or null. */
+        private final Ticket _second;
+        /** The game. */
+        private final Game _game;
+    }
+
+    /** The players waiting to play on boards of one size with one time
+     *  limit. */
+    private static final class Bucket {
+
+        /** A bucket for SIZExSIZE boards and TIME minutes. */
+        Bucket(int size, float time) {
+            _size = size;
+            _time = time;
+        }
+
+        /** The length of a side of the boards. */
+        private final int _size;
+        /** The time limit, in minutes. */
+        private final float _time;
+        /** The tickets, oldest first, including some no longer
+         *  waiting. */
+        private final ConcurrentLinkedQueue<Ticket> _queue =
+            new ConcurrentLinkedQueue<>();
+        /** The number of players waiting in the queue. */
+        private final AtomicInteger _waiting = new AtomicInteger();
+    }
+
+    /** Ticket states. */
+    private static final int WAITING = 0, CLAIMED = 1, DONE = 2,
+        CANCELLED = 3;
+
+    /** The rating window of a player who has just joined. */
+    static final int BASEWINDOW = 50;
+    /** How much a rating window widens each second. */
+    static final int WIDENING = 25;
+    /** The widest a rating window gets. */
+    static final int MAXWINDOW = 400;
+    /** The most waiting players looked at for each partner sought. */
+    static final int SCANLIMIT = 256;
+    /** Milliseconds between sweeps. */
+    static final long SWEEP = 100;
+
+    /** The buckets made so far, by key. */
+    private final ConcurrentHashMap<Long, Bucket> _buckets =
+        new ConcurrentHashMap<>();
+    /** The stream the seeds of games are split from.  Never drawn from,
+     *  so any thread may split it. */
+    private final GameRandom _seeds;
+    /** The number of games made. */
+    private final AtomicLong _games = new AtomicLong();
+    /** The number of players who have joined. */
+    private final AtomicLong _ids = new AtomicLong();
+    /** How long a player waits for a human before getting a machine, in
+     *  nanoseconds. */
+    private final long _fillNanos;
+    /** Runs the sweeps. */
+    private final ScheduledExecutorService _sweeper;
+}
@@ -0,0 +1,94 @@
+package battleship;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/** Loads a Lobby with joins from several threads, as fast as they can
+ *  go, and reports the rate of joins, how the players were paired, how
+ *  long they waited, and whether any player was paired twice.
+ *  @author Andrew Fang */
+class LobbyBench {
+
+    /** Runs the benchmark.  IGNORED is ignored. */
+    public static void main(String... ignored) throws InterruptedException {
+        Lobby lobby = new Lobby(0, FILLMILLIS);
+        List<List<Lobby.Ticket>> tickets = new ArrayList<>();
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            List<Lobby.Ticket> mine = new ArrayList<>();
+            tickets.add(mine);
+            Random rand = new Random(i);
+            Thread t = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int k = 0; k < JOINS / THREADS; k++) {
+                    mine.add(join(lobby, rand, k));
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%d joins from %d threads in %d ms: %.0f joins/s%n",
+                          JOINS, THREADS, nanos / 1000000,
+                          JOINS * 1e9 / nanos);
+        System.out.printf("waiting after the joins: 10x10 %d, 12x12 %d%n",
+                          lobby.waiting(10, 1) + lobby.waiting(10, 5),
+                          lobby.waiting(12, 1) + lobby.waiting(12, 5));
+        Thread.sleep(FILLMILLIS + 5 * Lobby.SWEEP);
+        int humans = 0, machines = 0, open = 0, twice = 0;
+        for (List<Lobby.Ticket> mine : tickets) {
+            for (Lobby.Ticket t : mine) {
+                Lobby.Match m = t.match().getNow(null);
+                if (m == null) {
+                    open += 1;
+                    t.cancel();
+                } else if (m.second() == null) {
+                    machines += 1;
+                } else {
+                    humans += 1;
+                    Lobby.Ticket other = m.first() == t ? m.second()
+                        : m.first();
+                    if (other.match().getNow(null) != m) {
+                        twice += 1;
+                    }
+                }
+            }
+        }
+        System.out.printf("paired with humans %d, with machines %d,"
+                          + " still waiting %d (cancelled), paired twice"
+                          + " %d%n", humans, machines, open, twice);
+        System.out.print(Metrics.snapshot());
+        lobby.close();
+    }
+
+    /** Has the Kth player of a thread join LOBBY, with a rating, board
+     *  size, time limit and preference drawn from RAND. */
+    private static Lobby.Ticket join(Lobby lobby, Random rand, int k) {
+        int rating = (int) (1500 + 200 * rand.nextGaussian());
+        int size = rand.nextInt(4) == 0 ? 12 : 10;
+        float time = rand.nextBoolean() ? 1 : 5;
+        int p = rand.nextInt(20);
+        Lobby.Preference preference = p == 0 ? Lobby.Preference.MACHINE
+            : p < 4 ? Lobby.Preference.HUMAN : Lobby.Preference.ANY;
+        return lobby.join("player" + k, size, time, rating, preference);
+    }
+
+    /** The joining threads. */
+    private static final int THREADS = 4;
+    /** The joins in all. */
+    private static final int JOINS = 200000;
+    /** How long players wait before a machine is filled in. */
+    private static final long FILLMILLIS = 1000;
+}
@@ -1,98 +1,311 @@
-package loa;
+package battleship;
 
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Random;
 import java.util.Scanner;
-import static loa.Bio.*;
-import static loa.Side.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import static battleship.Bio.*;
+import static battleship.Shipname.*;
 
 /** An automated Player.
  *  @author Andrew Fang*/
 class MachinePlayer extends Player {
 
-    /** A MachinePlayer that plays the SIDE pieces in GAME. */
-    MachinePlayer(Side side, Game game) {
-        super(side, game);
+    /** A MachinePlayer that plays SIDE in GAME with its own board SELF
+     *  and its view OPPONENT of the other player's board. */
+    MachinePlayer(Side side, SelfBoard self, EnemyBoard opponent, Game game) {
+        super(side, self, opponent, game);
         setBio(MACHINE);
     }
 
+    @Override void gameSetup(Scanner unused) {
+        if (getGame().hardFleets()) {
+            FleetPlanner.place(myBoard(), getGame().randomSource(side()));
+            return;
+        }
+        Random rand = getGame().randomSource(side());
+        int n = myBoard().size();
+        for (Shipname name : FLEET) {
+            Ship ship = new Ship(name);
+            int len = ship.size() - 1;
+            Coordinate coord;
+            do {
+                int c = 1 + rand.nextInt(n);
+                int r = 1 + rand.nextInt(n);
+                if (rand.nextBoolean()) {
+                    coord = new Coordinate(c, r, c + len, r);
+                } else {
+                    coord = new Coordinate(c, r, c, r + len);
+                }
+            } while (!myBoard().isOpen(coord));
+            myBoard().place(ship, coord);
+        }
+    }
+
+    /** Fires at the enemy board.  The decision is anytime: a legal move
+     *  is available at once and is refined until the deadline for this
+     *  turn, so a slow machine plays weaker moves instead of running out
+     *  of time. */
     @Override boolean decide(Scanner unused) {
+        System.out.println(side() + "::" + fire());
+        return true;
+    }
+
+    /** Takes this player's turn: chooses its shot, or under the salvo
+     *  rules its salvo, and fires it.  Returns the shots fired, as the
+     *  transcript shows them. */
+    String fire() {
+        if (getGame().salvo()) {
+            stopwatch().start();
+            Move[] shots = chooseSalvo(getGame().shotsAllowed(side()),
+                                       deadline());
+            stopwatch().stop();
+            enemyBoard().fire(shots);
+            StringBuilder out = new StringBuilder();
+            for (int i = 0; i < shots.length; i++) {
+                out.append(i == 0 ? "" : " ").append(shots[i]);
+            }
+            return out.toString();
+        }
         stopwatch().start();
-        Move m = guessBestMove(side(), getBoard(), 9);
+        Move m = pondered();
+        if (m == null) {
+            m = chooseMove(deadline());
+        }
         stopwatch().stop();
-        if (stopwatch().getAccum() / THOU > getGame().getTime() * SEC) {
-            System.out.println("   You ran out of time.");
-            if (side() == WHITE) {
-                System.out.println("Black wins.");
-            } else {
-                System.out.println("White wins.");
+        enemyBoard().makeMove(m);
+        return m.toString();
+    }
+
+    /** Starts choosing, in the background, the move this player will
+     *  make next, while its opponent takes its turn.  The opponent's
+     *  shot changes only this player's own board, so the position this
+     *  player will face is already known, hit or miss: it is the enemy
+     *  board as it stands.  The search runs on a copy of this player's
+     *  random stream, with this turn's usual deadline, on the opponent's
+     *  time.  Salvos are not pondered. */
+    void ponder() {
+        cancelPonder();
+        if (enemyBoard() == null || enemyBoard().allSunk()
+            || getGame().salvo()) {
+            return;
+        }
+        MachinePlayer shadow =
+            new MachinePlayer(side(), myBoard(), enemyBoard(), getGame());
+        shadow._random = new GameRandom(0);
+        shadow._random.setState(getGame().randomSource(side()).state());
+        shadow._density = _density;
+        shadow._entropy = _entropy;
+        shadow._lookahead = _lookahead;
+        _density = null;
+        _entropy = null;
+        _lookahead = null;
+        long deadline = deadline();
+        _ponder = new Ponder(shadow, enemyBoard().shotsTaken(),
+                             PONDERING.submit(() ->
+                                              shadow.chooseMove(deadline)));
+    }
+
+    /** Stops pondering, discarding whatever it was going to find. */
+    void cancelPonder() {
+        if (_ponder != null) {
+            _ponder.future.cancel(true);
+            _ponder = null;
+        }
+    }
+
+    /** Returns the move found by pondering, waiting for it to be done,
+     *  if the enemy board is still as it was when pondering began, and
+     *  otherwise null.  Taking the move advances this player's random
+     *  stream as if it had chosen the move itself. */
+    private Move pondered() {
+        Ponder ponder = _ponder;
+        _ponder = null;
+        if (ponder == null || ponder.shadow.enemyBoard() != enemyBoard()
+            || ponder.shots != enemyBoard().shotsTaken()) {
+            if (ponder != null) {
+                ponder.future.cancel(true);
             }
-            System.exit(0);
+            return null;
         }
-        getBoard().makeMove(m);
-        if (side() == BLACK) {
-            System.out.print("B::");
-        } else {
-            System.out.print("W::");
+        Move m;
+        try {
+            m = ponder.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
         }
-        System.out.println(m);
-        return true;
+        getGame().randomSource(side()).setState(ponder.shadow._random.state());
+        _density = ponder.shadow._density;
+        _entropy = ponder.shadow._entropy;
+        _lookahead = ponder.shadow._lookahead;
+        Metrics.PONDERED.incrementAndGet();
+        return m;
     }
 
-    /** Returns a move for SIDE that has an estimated value >= CUTOFF
-     *  or has the best estimated value for SIDE, starting from board
-     *  START, and looking up to DEPTH moves ahead.
-     *  Method adapted from the Data Structures Textbook. */
-    Move findBestMove(Side side, Board start, int depth, double cutoff) {
-        if (start.piecesContiguous(side)) {
-            return guessBestMove(side, start, cutoff);
+    /** Returns the move chosen by the game's strategy before DEADLINE
+     *  (as from System.currentTimeMillis), without making it. */
+    Move chooseMove(long deadline) {
+        Move m = refineMove(deadline);
+        if (Thread.currentThread().isInterrupted()) {
+            return m;
         }
-        if (depth == 0) {
-            return guessBestMove(side, start, cutoff);
+        Move e = null;
+        if (getGame().getStrategy() == Strategy.ENTROPY) {
+            e = entropyMove(deadline);
+        } else if (getGame().getStrategy() == Strategy.EXPECTIMAX) {
+            e = findBestMove(deadline);
         }
-        Move bestMove = guessBestMove(side, start, cutoff);
-        int bestScore;
-        Iterator iter = start.legalMoves().listIterator();
-        bestScore = Integer.MIN_VALUE;
-        while (iter.hasNext()) {
-            Move next = (Move) iter.next();
-            int s1 = start.score(side, next);
-            start.makeMove(next);
-            Move response
-                = findBestMove(side.opponent(), start, depth - 1, cutoff);
-            int s2 = start.score(side.opponent(), response);
-            if ((s1 - s2) > bestScore) {
-                bestScore = s1 - s2;
-                bestMove = next;
+        return e != null ? e : m;
+    }
+
+    /** Returns the time (as from System.currentTimeMillis) by which this
+     *  turn's move must be chosen: this turn's share of what is left of
+     *  the clock, assuming about half the free squares are still to be
+     *  shot at, as many a turn as this turn. */
+    long deadline() {
+        long remaining = (long) (getGame().getTime() * SEC * THOU)
+            - stopwatch().getAccum();
+        int n = enemyBoard().size();
+        int perTurn = getGame().shotsAllowed(side());
+        int turnsLeft = Math.max(1, (n * n - enemyBoard().shotsTaken())
+                                 / (2 * perTurn));
+        return System.currentTimeMillis() + Math.max(0, remaining / turnsLeft);
+    }
+
+    /** Returns the best move found before DEADLINE.  Starts from a
+     *  random legal move, then adds the placements of one ship at a time,
+     *  largest first, to a density map of the enemy board and takes the
+     *  densest square, stopping as soon as DEADLINE passes. */
+    Move refineMove(long deadline) {
+        EnemyBoard board = enemyBoard();
+        int n = board.size();
+        Move best = randomMove();
+        if (_density == null || _density.size() != n) {
+            _density = Density.create(n);
+        }
+        Density density = _density;
+        density.load(board);
+        for (Shipname ship : FLEET) {
+            if (System.currentTimeMillis() >= deadline
+                || Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            SearchEvent event = new SearchEvent();
+            event.begin();
+            long start = Histogram.start();
+            int samples = density.add(ship.size());
+            Metrics.DENSITY.recordSince(start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = "density " + ship;
+                event.boardSize = n;
+                event.candidates = n * n - board.shotsTaken();
+                event.samples = samples;
+                event.commit();
             }
-            if (bestScore >= cutoff) {
+            start = Histogram.start();
+            best = guessBestMove(board, density);
+            Metrics.SELECT.recordSince(start);
+        }
+        return best;
+    }
+
+    /** Returns K different legal moves to fire together as a salvo,
+     *  chosen before DEADLINE.  Builds one density map of the enemy board
+     *  (as refineMove does, with as many ships as time allows) and takes
+     *  the K densest squares together, breaking ties at random.  A ship's
+     *  chance of lying across a square is in proportion to the square's
+     *  density, so these are the K squares with the most hits expected
+     *  between them: expected hits add up over the squares of a salvo,
+     *  whatever the others are. */
+    Move[] chooseSalvo(int k, long deadline) {
+        EnemyBoard board = enemyBoard();
+        int n = board.size();
+        if (_density == null || _density.size() != n) {
+            _density = Density.create(n);
+        }
+        Density density = _density;
+        density.load(board);
+        for (Shipname ship : FLEET) {
+            if (ship != FLEET[0] && System.currentTimeMillis() >= deadline) {
                 break;
             }
-            start.retract();
+            long start = Histogram.start();
+            density.add(ship.size());
+            Metrics.DENSITY.recordSince(start);
         }
-        return bestMove;
+        long start = Histogram.start();
+        Random rand = random();
+        Move[] best = new Move[k];
+        int[] score = new int[k];
+        int found = 0;
+        for (Move next : board.legalMoves()) {
+            int s = density.get(next.getCol(), next.getRow());
+            int i = found < k ? found++ : k;
+            while (i > 0 && (score[i - 1] < s
+                             || (score[i - 1] == s && rand.nextBoolean()))) {
+                if (i < k) {
+                    best[i] = best[i - 1];
+                    score[i] = score[i - 1];
+                }
+                i -= 1;
+            }
+            if (i < k) {
+                best[i] = next;
+                score[i] = s;
+            }
+        }
+        Metrics.SELECT.recordSince(start);
+        return found < k ? Arrays.copyOf(best, found) : best;
     }
 
-    /** Auxillary function for findBestMove, that returns
-     *  the best move for SIDE, starting from board START,
-     *  Stops if a move is higher than CUTOFF.
-     *  Adapted from the Data Structures Textbook. */
-    Move guessBestMove(Side side, Board start, double cutoff) {
+    /** Returns the move with the greatest expected information gain
+     *  found before DEADLINE, or null if there was too little time or too
+     *  few layouts fit the board to tell. */
+    Move entropyMove(long deadline) {
+        int n = enemyBoard().size();
+        if (_entropy == null || _entropy.size() != n) {
+            _entropy = new EntropyTargeting(n, ForkJoinPool.commonPool());
+        }
+        long seed = random().nextLong();
+        return _entropy.choose(enemyBoard(), seed, deadline);
+    }
+
+    /** Returns the move likeliest to hit the enemy board, as Lookahead
+     *  estimates it, or null if DEADLINE has passed. */
+    Move findBestMove(long deadline) {
+        int n = enemyBoard().size();
+        if (_lookahead == null || _lookahead.size() != n) {
+            _lookahead = new Lookahead(n);
+        }
+        return _lookahead.choose(enemyBoard(), deadline);
+    }
+
+    /** Returns the legal move on START with the highest value in
+     *  DENSITY, breaking ties at random. */
+    Move guessBestMove(ReadOnlyBoard start, Density density) {
         Move bestMove;
         int bestScore;
-        Iterator iter = start.legalMoves().listIterator();
-        bestMove = (Move) iter.next();
-        int s1 = start.score(side, bestMove);
-        bestScore = s1;
+        Random rand = random();
+        Iterator<Move> iter = start.legalMoves().listIterator();
+        bestMove = iter.next();
+        bestScore = density.get(bestMove.getCol(), bestMove.getRow());
         while (iter.hasNext()) {
-            Move next = (Move) iter.next();
-            s1 = start.score(side, next);
-            boolean random = getGame().getRandomSource().nextBoolean();
+            Move next = iter.next();
+            int s1 = density.get(next.getCol(), next.getRow());
+            boolean random = rand.nextBoolean();
             if (s1 > bestScore || (s1 == bestScore && random)) {
                 bestMove = next;
                 bestScore = s1;
-                if (s1 >= cutoff) {
-                    break;
-                }
             }
         }
         return bestMove;
@@ -100,12 +313,68 @@ class MachinePlayer extends Player {
 
     /** Returns a random move chosen from all possible moves. */
     Move randomMove() {
-        Iterator moves = getBoard().legalMoves().listIterator();
-        int size = getBoard().legalMoves().size();
-        int index = (getGame().getRandomSource().nextInt(9 * 9) % size);
-        return getBoard().legalMoves().get(index);
+        LinkedList<Move> moves = enemyBoard().legalMoves();
+        int index = random().nextInt(moves.size());
+        return moves.get(index);
     }
 
+    /** Returns the stream this player draws its random choices from. */
+    private GameRandom random() {
+        return _random != null ? _random : getGame().randomSource(side());
+    }
+
+    /** A search for the next move, begun while the opponent moves. */
+    private static class Ponder {
+
+        /** A search by SHADOW of the enemy board with SHOTS shots taken,
+         *  whose move FUTURE will hold. */
+        Ponder(MachinePlayer shadow, int shots, Future<Move> future) {
+            this.shadow = shadow;
+            this.shots = shots;
+            this.future = future;
+        }
+
+        /** The copy of the player doing the search. */
+        final MachinePlayer shadow;
+        /** The shots taken on the enemy board when the search began. */
+        final int shots;
+        /** The move found. */
+        final Future<Move> future;
+    }
+
+    /** Runs the searches of pondering players.  Its threads do not keep
+     *  the program running. */
+    private static final ExecutorService PONDERING =
+        Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "ponder");
+            t.setDaemon(true);
+            return t;
+        });
+
+    /** The ships of a fleet, largest first. */
+    static final Shipname[] FLEET = {
+        CARRIER, BATTLESHIP, SUBMARINE, DESTROYER, PATROL
+    };
+
+    /** Extra weight given to a placement for each hit it covers. */
+    static final int HITWEIGHT = 20;
+
+    /** The density map of the enemy board. */
+    private Density _density;
+
+    /** The information-gain targeter, when used. */
+    private EntropyTargeting _entropy;
+
+    /** The lookahead targeter, when used. */
+    private Lookahead _lookahead;
+
+    /** The stream of a copy made to ponder, or null to use the game's
+     *  stream for my side. */
+    private GameRandom _random;
+
+    /** The search begun by ponder, if any. */
+    private Ponder _ponder;
+
     /** The number of seconds in a minute. */
     private static final int SEC = 60;
 
@@ -1,35 +1,75 @@
-package loa;
+package battleship;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
 import ucb.util.CommandArgs;
-import static loa.Side.*;
 
-/** Main class of the Lines of Action program.
+/** Main class of the Battleship program.
  * @author Andrew Fang
  */
 public class Main {
 
-    /** The main Lines of Action.  ARGS are as described in the
-     *  project 3 handout:
-     *      [ --white ] [ --ai=N ] [ --seed=S ] [ --time=LIM ] \
-     *      [ --debug=D ] [ --display ]
+    /** The main Battleship.  ARGS are
+     *      [ --ai=N ] [ --seed=S ] [ --time=LIM ] [ --size=N ] [ --debug=D ]
+     *      [ --batch=G ] [ --checkpoint=FILE ] [ --strategy=S ]
+     *      [ --placement=P ] [ --compare=S ] [ --spectate=PORT ]
+     *      [ --results=FILE ] [ --query=FILE ] [ --daemon=SOCKET ]
+     *      [ --players=N ] [ --rules=R ] [ --workers=N ] [ --games=G ]
+     *      [ --tables=FILE ]
+     *  With --batch, plays G machine games in lockstep and reports
+     *  the results instead of playing one game.  With --compare, plays
+     *  the strategy of --strategy against S on the same fleets until one
+     *  is significantly better, and reports the results.  With
+     *  --checkpoint, the game is saved to FILE after every turn, and
+     *  resumed from FILE (ignoring the other options) if it already
+     *  exists.  With --spectate, the game is streamed to spectators
+     *  connecting to PORT.  With --results, the results of the games
+     *  played are appended to FILE; --query reports the mean shots to
+     *  win by strategy and board size in such a FILE.  With --daemon,
+     *  serves jobs with any of these options sent by Client to the Unix
+     *  domain socket SOCKET, in this one warm JVM.  With --players, N
+     *  machine players play a Melee, all firing at once.  With
+     *  --rules=salvo, each player fires a shot a turn for each of its
+     *  ships afloat.  With --workers, plays G machine games, with seeds
+     *  S, S+1, ..., on N worker JVMs run by a Coordinator, and reports
+     *  the results; with --checkpoint, its progress is saved to FILE
+     *  after every chunk of games, and resumed from FILE if it exists.
+     *  --worker=SOCKET runs one of those workers.  With --tables, writes
+     *  the AI's tables for boards up to --size to FILE, for JVMs run
+     *  with -Dbattleship.tables=FILE to share.
      */
     public static void main(String... args) {
-        Side side = BLACK;
-        boolean hasDisplay;
+        int status = run(true, args);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /** Does what main does with ARGS, returning the exit status instead of
+     *  exiting.  Unless INTERACTIVE, games that need a human (or a
+     *  daemon) are refused. */
+    static int run(boolean interactive, String... args) {
         int numPlayers = 1;
         long seedVal = 4;
         float timeVal = BIG;
+        int sizeVal = SIZE;
         int debugVal = 0;
-        String opt = "--white --ai=([012]) --seed=(\\d+)"
-            + " --time=(\\d*\\.?\\d+) --debug=(\\d) --display";
+        String opt = "--ai=([012]) --seed=(\\d+)"
+            + " --time=(\\d*\\.?\\d+) --size=(\\d+) --debug=(\\d)"
+            + " --batch=(\\d+) --checkpoint=(.+)"
+            + " --strategy=(density|entropy|expectimax)"
+            + " --placement=(random|hard)"
+            + " --compare=(density|entropy|expectimax) --spectate=(\\d+)"
+            + " --results=(.+) --query=(.+) --daemon=(.+) --players=(\\d+)"
+            + " --rules=(classic|salvo) --workers=(\\d+) --games=(\\d+)"
+            + " --worker=(.+) --tables=(.+)";
         CommandArgs options = new CommandArgs(opt, args);
         if (!options.ok()) {
-            usage();
-        }
-        if (options.containsKey("--white")) {
-            side = WHITE;
+            return usage();
         }
-        hasDisplay = options.containsKey("--display");
         if (options.containsKey("--ai")) {
             numPlayers = 2 - options.getInt("--ai");
         }
@@ -39,26 +79,299 @@ public class Main {
         if (options.containsKey("--time")) {
             timeVal = (float) options.getDouble("--time");
         }
+        if (options.containsKey("--size")) {
+            sizeVal = options.getInt("--size");
+            if (sizeVal < MINSIZE || sizeVal > SparseBoard.MAXSIZE
+                || (sizeVal > SelfBoard.MAXSIZE && numPlayers > 0)) {
+                return usage();
+            }
+        }
         if (options.containsKey("--debug")) {
             debugVal = options.getInt("--debug");
         }
-        Game game = new Game(numPlayers, side, seedVal, timeVal, debugVal);
-        game.play();
+        if (options.containsKey("--daemon")) {
+            if (!interactive) {
+                return usage();
+            }
+            return Daemon.serve(Paths.get(options.getLast("--daemon")));
+        }
+        if (options.containsKey("--query")) {
+            try {
+                System.out.print(ResultStore.meanShotsToWin(
+                    Paths.get(options.getLast("--query"))));
+            } catch (IOException e) {
+                System.err.println("Could not read results: "
+                                   + e.getMessage());
+                return 1;
+            }
+            return 0;
+        }
+        if (options.containsKey("--tables")) {
+            Path file = Paths.get(options.getLast("--tables"));
+            try {
+                Tables.write(file, Math.min(sizeVal, SelfBoard.MAXSIZE));
+            } catch (IOException e) {
+                System.err.println("Could not write " + file + ": "
+                                   + e.getMessage());
+                return 1;
+            }
+            return 0;
+        }
+        if (options.containsKey("--worker")) {
+            if (!interactive) {
+                return usage();
+            }
+            return Coordinator.work(Paths.get(options.getLast("--worker")));
+        }
+        if (options.containsKey("--workers")) {
+            if (!interactive) {
+                return usage();
+            }
+            return runWorkers(options, seedVal, sizeVal, timeVal);
+        }
+        if (!interactive && numPlayers > 0
+            && !options.containsKey("--batch")
+            && !options.containsKey("--compare")
+            && !options.containsKey("--players")) {
+            System.out.println("The daemon plays only --ai=2 games.");
+            return 1;
+        }
+        ResultStore.Writer results = null;
+        if (options.containsKey("--results")) {
+            try {
+                results = new ResultStore.Writer(
+                    Paths.get(options.getLast("--results")));
+            } catch (IOException e) {
+                System.err.println("Could not open results: "
+                                   + e.getMessage());
+                return 1;
+            }
+        }
+        if (options.containsKey("--batch")) {
+            BatchSim sim;
+            try {
+                sim = new BatchSim(sizeVal, options.getInt("--batch"),
+                                   seedVal);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Batch too large: " + e.getMessage());
+                closeResults(results, null);
+                return 1;
+            }
+            sim.run();
+            System.out.println(sim.summary());
+            closeResults(results, sim);
+            return 0;
+        }
+        if (options.containsKey("--players")) {
+            int players = options.getInt("--players");
+            if (players < 2 || players > Melee.MAXPLAYERS
+                || sizeVal > SelfBoard.MAXSIZE) {
+                return usage();
+            }
+            Strategy strategy = Strategy.DENSITY;
+            if (options.containsKey("--strategy")) {
+                strategy = Strategy.valueOf(options.getLast("--strategy")
+                                            .toUpperCase());
+            }
+            ExecutorService decisions = Melee.executor();
+            try {
+                new Melee(players, sizeVal, strategy, timeVal, seedVal)
+                    .play(decisions);
+            } finally {
+                decisions.shutdown();
+            }
+            return 0;
+        }
+        if (options.containsKey("--compare")) {
+            if (sizeVal > SelfBoard.MAXSIZE) {
+                return usage();
+            }
+            Strategy a = Strategy.DENSITY;
+            if (options.containsKey("--strategy")) {
+                a = Strategy.valueOf(options.getLast("--strategy")
+                                     .toUpperCase());
+            }
+            Strategy b = Strategy.valueOf(options.getLast("--compare")
+                                          .toUpperCase());
+            StrategyTrial trial = new StrategyTrial(sizeVal, a, b, seedVal,
+                                                    timeVal);
+            trial.run();
+            System.out.print(trial.summary());
+            return 0;
+        }
+        Metrics.register();
+        try (Metrics.Reporter reporter = debugVal > 0
+             ? Metrics.startReporter(REPORTPERIOD) : null) {
+            Game game = new Game(numPlayers, seedVal, timeVal, sizeVal,
+                                 debugVal);
+            if (options.containsKey("--strategy")) {
+                game.setStrategy(Strategy.valueOf(options.getLast("--strategy")
+                                                  .toUpperCase()));
+            }
+            if (options.containsKey("--placement")) {
+                game.setHardFleets(options.getLast("--placement")
+                                   .equals("hard"));
+            }
+            if (options.containsKey("--rules")) {
+                boolean salvo = options.getLast("--rules").equals("salvo");
+                if (salvo && sizeVal > SelfBoard.MAXSIZE) {
+                    return usage();
+                }
+                game.setSalvo(salvo);
+            }
+            if (options.containsKey("--checkpoint")) {
+                Path file = Paths.get(options.getLast("--checkpoint"));
+                if (Files.exists(file)) {
+                    try {
+                        game = Snapshot.read(file);
+                    } catch (IOException | IllegalArgumentException e) {
+                        System.err.println("Could not resume " + file + ": "
+                                           + e.getMessage());
+                        return 1;
+                    }
+                }
+                game.setCheckpoint(file);
+            }
+            Spectators spectators = null;
+            if (options.containsKey("--spectate")) {
+                try {
+                    spectators = new Spectators(options.getInt("--spectate"));
+                } catch (IOException e) {
+                    System.err.println("Could not serve spectators: "
+                                       + e.getMessage());
+                    return 1;
+                }
+                game.setSpectators(spectators);
+            }
+            game.setResults(results);
+            game.play();
+            closeResults(results, null);
+            if (spectators != null) {
+                try {
+                    spectators.close();
+                } catch (IOException e) {
+                    System.err.println("Could not close spectators: "
+                                       + e.getMessage());
+                }
+            }
+            return 0;
+        }
+    }
+
+    /** Plays the games of a --workers run with the options OPTIONS,
+     *  whose seed, board size and time limit are SEEDVAL, SIZEVAL and
+     *  TIMEVAL, and returns the exit status. */
+    private static int runWorkers(CommandArgs options, long seedVal,
+                                  int sizeVal, float timeVal) {
+        int workers = options.getInt("--workers");
+        if (workers < 1 || workers > Coordinator.MAXWORKERS
+            || sizeVal > SelfBoard.MAXSIZE) {
+            return usage();
+        }
+        Coordinator run = null;
+        Path checkpoint = null;
+        if (options.containsKey("--checkpoint")) {
+            checkpoint = Paths.get(options.getLast("--checkpoint"));
+            if (Files.exists(checkpoint)) {
+                try {
+                    run = Coordinator.resume(checkpoint);
+                } catch (IOException | IllegalArgumentException e) {
+                    System.err.println("Could not resume " + checkpoint
+                                       + ": " + e.getMessage());
+                    return 1;
+                }
+            }
+        }
+        if (run == null) {
+            if (!options.containsKey("--games")) {
+                return usage();
+            }
+            Strategy strategy = Strategy.DENSITY;
+            if (options.containsKey("--strategy")) {
+                strategy = Strategy.valueOf(options.getLast("--strategy")
+                                            .toUpperCase());
+            }
+            run = new Coordinator(seedVal, options.getLong("--games"),
+                                  sizeVal, strategy, timeVal);
+        }
+        run.setCheckpoint(checkpoint);
+        try {
+            if (options.containsKey("--results")) {
+                run.setResults(Paths.get(options.getLast("--results")));
+            }
+            boolean done = run.run(workers);
+            System.out.println(run.summary());
+            return done ? 0 : 1;
+        } catch (IOException e) {
+            System.err.println("Could not run the workers: "
+                               + e.getMessage());
+            return 1;
+        }
+    }
+
+    /** Appends the results of SIM, if not null, to RESULTS, if not null,
+     *  and closes RESULTS. */
+    static void closeResults(ResultStore.Writer results, BatchSim sim) {
+        if (results == null) {
+            return;
+        }
+        try {
+            if (sim != null) {
+                sim.record(results);
+            }
+            results.close();
+        } catch (IOException e) {
+            System.err.println("Could not write results: " + e.getMessage());
+        }
     }
 
     /** A very big number. */
     static final float BIG = 9999;
 
-    /** Print brief description of the command-line format. */
-    static void usage() {
+    /** The default board size. */
+    static final int SIZE = 10;
+
+    /** The smallest board size allowed. */
+    static final int MINSIZE = 8;
+
+    /** Seconds between metrics reports when debugging. */
+    static final long REPORTPERIOD = 10;
+
+    /** Print brief description of the command-line format, and return
+     *  the exit status for a usage error. */
+    static int usage() {
         String c = "Use these command arguments:\n";
-        String w = "\"--white\" (will start you with white)\n";
         String a = "\"--ai=N\" (N=number of AIs playing)\n";
         String s = "\"--seed=S\" (a seed number for AI randomness)\n";
         String t = "\"--time=T\" (a max time limit (minutes) for each turn)\n";
-        String d = "\"--debug=D\" (debugging paramters)\n";
-        String di = "\"--display\" (turns on the GUI display)\n";
-        System.out.println(c + w + a + s + t + d + di);
-        System.exit(1);
+        String n = "\"--size=N\" (an NxN board, 8 <= N <= 65536;"
+            + " over 26 needs --ai=2)\n";
+        String d = "\"--debug=D\" (debugging paramters; D > 0 reports"
+            + " metrics to stderr)\n";
+        String b = "\"--batch=G\" (plays G AI games in lockstep)\n";
+        String k = "\"--checkpoint=FILE\" (saves to, and resumes from,"
+            + " FILE)\n";
+        String st = "\"--strategy=S\" (AI targeting: density, entropy or"
+            + " expectimax)\n";
+        String p = "\"--placement=P\" (AI fleets: random or hard to hit)\n";
+        String v = "\"--compare=S\" (tests --strategy against S)\n";
+        String w = "\"--spectate=PORT\" (streams the game to PORT)\n";
+        String r = "\"--results=FILE\" (appends game results to FILE)\n";
+        String q = "\"--query=FILE\" (mean shots to win in FILE)\n";
+        String m = "\"--daemon=SOCKET\" (plays games sent by Client to"
+            + " the Unix socket SOCKET)\n";
+        String y = "\"--players=N\" (N AIs, 2 <= N <= 16, all firing at"
+            + " once)\n";
+        String u = "\"--rules=R\" (classic, or salvo: a shot a turn per"
+            + " ship afloat)\n";
+        String x = "\"--workers=N\" (plays --games=G AI games on N worker"
+            + " JVMs)\n";
+        String g = "\"--games=G\" (the games of a --workers run)\n";
+        String o = "\"--worker=SOCKET\" (a worker of a --workers run)\n";
+        String f = "\"--tables=FILE\" (writes the AI's tables for boards up"
+            + " to --size to FILE)\n";
+        System.out.println(c + a + s + t + n + d + b + k + st + p + v + w
+                           + r + q + m + y + u + x + g + o + f);
+        return 1;
     }
 }
@@ -0,0 +1,180 @@
+package battleship;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import ucb.util.Stopwatch;
+
+/** A game among N machine players who all fire at once.  The players sit
+ *  in a ring, and each round every player still in the game fires one
+ *  shot at the next player round the ring who is still in.  Everyone can
+ *  see every shot, so a player who moves on to a new target knows what
+ *  has been found on that target's board before.  A player is out when
+ *  all its ships are sunk; the last one in wins, and if the last players
+ *  are all put out in the same round, the game is drawn.
+ *
+ *  Each round has two phases.  In the decide phase every player chooses
+ *  its shot on a shared executor, all at once, so a round takes about as
+ *  long as its slowest decision.  A player's decision reads only its
+ *  target's board, and no two players share a target, so the decisions
+ *  are independent.  In the commit phase the shots are made, and players
+ *  put out, in ring order, so the game depends only on its seed.
+ *  @author Andrew Fang */
+class Melee {
+
+    /** A game among N machine players on SIZExSIZE boards, choosing
+     *  their shots by STRATEGY with TIME minutes each on their clocks,
+     *  with fleets and random streams split from SEED. */
+    Melee(int n, int size, Strategy strategy, float time, long seed) {
+        _n = n;
+        _size = size;
+        GameRandom root = new GameRandom(seed);
+        _games = new Game[n];
+        _boards = new EnemyBoard[n];
+        _ai = new MachinePlayer[n][n];
+        _clocks = new Stopwatch[n];
+        _out = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            _games[i] = new Game(0, root.split(i).nextLong(), time, size, 0);
+            _games[i].setStrategy(strategy);
+            SelfBoard fleet = new SelfBoard(size);
+            new MachinePlayer(Side.PLAYER2, fleet, null, _games[i])
+                .gameSetup(null);
+            _boards[i] = new EnemyBoard(size, fleet);
+            _clocks[i] = new Stopwatch();
+        }
+    }
+
+    /** Plays the game on EXECUTOR, printing each shot and the result. */
+    void play(ExecutorService executor) {
+        System.out.println("   WELCOME TO BATTLESHIP");
+        int left = _n;
+        while (left > 1) {
+            _rounds += 1;
+            int[] target = new int[_n];
+            List<Callable<Move>> decisions = new ArrayList<>();
+            List<Integer> shooters = new ArrayList<>();
+            for (int i = 0; i < _n; i++) {
+                if (!_out[i]) {
+                    target[i] = next(i);
+                    decisions.add(decision(i, target[i]));
+                    shooters.add(i);
+                }
+            }
+            List<Future<Move>> moves;
+            try {
+                moves = executor.invokeAll(decisions);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            for (int k = 0; k < shooters.size(); k++) {
+                int i = shooters.get(k);
+                Move m = get(moves.get(k));
+                _boards[target[i]].makeMove(m);
+                System.out.println(name(i) + "->" + name(target[i]) + "::"
+                                   + m);
+            }
+            for (int i = 0; i < _n; i++) {
+                if (!_out[i] && _boards[i].allSunk()) {
+                    _out[i] = true;
+                    left -= 1;
+                    System.out.println(name(i) + " is out.");
+                }
+            }
+        }
+        for (int i = 0; i < _n; i++) {
+            if (!_out[i]) {
+                System.out.println(name(i) + " wins.");
+                return;
+            }
+        }
+        System.out.println("Draw.");
+    }
+
+    /** Returns the decision of player I on its shot at player TARGET.
+     *  All of I's AIs run on I's one clock, so that its time limit holds
+     *  across its targets. */
+    private Callable<Move> decision(int i, int target) {
+        if (_ai[i][target] == null) {
+            _ai[i][target] = new MachinePlayer(Side.PLAYER1,
+                                               new SelfBoard(_size),
+                                               _boards[target], _games[i]);
+            _ai[i][target].setStopwatch(_clocks[i]);
+        }
+        MachinePlayer ai = _ai[i][target];
+        return () -> {
+            ai.stopwatch().start();
+            try {
+                return ai.chooseMove(ai.deadline());
+            } finally {
+                ai.stopwatch().stop();
+            }
+        };
+    }
+
+    /** Returns the move FUTURE holds, which is done. */
+    private static Move get(Future<Move> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("decision failed", e);
+        }
+    }
+
+    /** Returns the next player after I round the ring still in. */
+    private int next(int i) {
+        int j = (i + 1) % _n;
+        while (_out[j]) {
+            j = (j + 1) % _n;
+        }
+        return j;
+    }
+
+    /** Returns the name of player I. */
+    static String name(int i) {
+        return "player" + (i + 1);
+    }
+
+    /** Returns the number of rounds played. */
+    int rounds() {
+        return _rounds;
+    }
+
+    /** The most players in a game. */
+    static final int MAXPLAYERS = 16;
+
+    /** Returns a new executor for the decisions of a game, to be shut
+     *  down when the game is over.  Its threads do not keep the program
+     *  running. */
+    static ExecutorService executor() {
+        return Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "melee-decision");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** The number of players. */
+    private final int _n;
+    /** The length of a side of the boards. */
+    private final int _size;
+    /** By player, the Game holding its strategy, clock limit and random
+     *  streams. */
+    private final Game[] _games;
+    /** By player, what everyone knows of its board. */
+    private final EnemyBoard[] _boards;
+    /** By player and target, its AI for shooting at that target, made
+     *  when first needed. */
+    private final MachinePlayer[][] _ai;
+    /** By player, its clock, shared by all its AIs. */
+    private final Stopwatch[] _clocks;
+    /** By player, true iff it is out. */
+    private final boolean[] _out;
+    /** Rounds played. */
+    private int _rounds;
+}
@@ -0,0 +1,177 @@
+package battleship;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/** Counters and latency histograms for the game engine.  They are always
+ *  on: updating them takes no locks and allocates nothing.  They may be
+ *  read through JMX (under the "battleship" domain) or as a text snapshot.
+ *  @author Andrew Fang */
+final class Metrics implements MetricsMBean {
+
+    /** Games started. */
+    static final AtomicLong GAMES = new AtomicLong();
+    /** Shots fired. */
+    static final AtomicLong SHOTS = new AtomicLong();
+    /** Shots that hit a ship. */
+    static final AtomicLong HITS = new AtomicLong();
+    /** Ships sunk. */
+    static final AtomicLong SINKS = new AtomicLong();
+    /** Machine moves taken from pondering. */
+    static final AtomicLong PONDERED = new AtomicLong();
+    /** Players who have joined a Lobby. */
+    static final AtomicLong JOINS = new AtomicLong();
+    /** Players waiting in a Lobby's queues now. */
+    static final AtomicLong WAITING = new AtomicLong();
+    /** Games a Lobby has made between two humans. */
+    static final AtomicLong MATCHES = new AtomicLong();
+    /** Games a Lobby has made by filling in a machine. */
+    static final AtomicLong FILLS = new AtomicLong();
+
+    /** Time taken by Player.decide. */
+    static final Histogram DECIDE = new Histogram("decide");
+    /** Time taken by EnemyBoard.makeMove. */
+    static final Histogram MAKEMOVE = new Histogram("makeMove");
+    /** Time taken by a player's gameSetup. */
+    static final Histogram SETUP = new Histogram("setup");
+    /** Time taken by the AI to add one ship to its density map. */
+    static final Histogram DENSITY = new Histogram("density");
+    /** Time taken by the AI to pick the best square of a density map. */
+    static final Histogram SELECT = new Histogram("select");
+    /** Time players wait in a Lobby for a game. */
+    static final Histogram LOBBYWAIT = new Histogram("lobbyWait");
+
+    /** All the histograms. */
+    static final Histogram[] HISTOGRAMS = {
+        DECIDE, MAKEMOVE, SETUP, DENSITY, SELECT, LOBBYWAIT
+    };
+
+    /** Not instantiated outside this class. */
+    private Metrics() {
+    }
+
+    /** Returns a text snapshot of every counter and histogram. */
+    static String snapshot() {
+        StringBuilder s = new StringBuilder();
+        s.append(String.format("games=%d shots=%d hits=%d sinks=%d"
+                               + " pondered=%d%n", GAMES.get(), SHOTS.get(),
+                               HITS.get(), SINKS.get(), PONDERED.get()));
+        s.append(String.format("joins=%d waiting=%d matches=%d fills=%d%n",
+                               JOINS.get(), WAITING.get(), MATCHES.get(),
+                               FILLS.get()));
+        for (Histogram h : HISTOGRAMS) {
+            s.append(h).append(String.format("%n"));
+        }
+        return s.toString();
+    }
+
+    /** Registers the counters and histograms with the platform MBean
+     *  server.  Does nothing if they are already registered. */
+    static synchronized void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=Metrics");
+            if (server.isRegistered(name)) {
+                return;
+            }
+            server.registerMBean(new Metrics(), name);
+            for (Histogram h : HISTOGRAMS) {
+                server.registerMBean(h, new ObjectName(DOMAIN
+                    + ":type=Histogram,name=" + h.name()));
+            }
+        } catch (JMException e) {
+            System.err.println("Could not register metrics: " + e);
+        }
+    }
+
+    /** Returns a Reporter that prints a snapshot to the standard error
+     *  every PERIOD seconds until it is closed. */
+    static Reporter startReporter(long period) {
+        return new Reporter(period);
+    }
+
+    /** Prints snapshots periodically on a thread of its own, started by
+     *  the thread that makes it (so that, in a Daemon, they go to the
+     *  client of the job that asked for them). */
+    static final class Reporter implements AutoCloseable {
+
+        /** A reporter printing every PERIOD seconds. */
+        private Reporter(long period) {
+            _timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "metrics-reporter");
+                t.setDaemon(true);
+                return t;
+            });
+            _timer.scheduleAtFixedRate(() -> System.err.print(snapshot()),
+                                       period, period, TimeUnit.SECONDS);
+        }
+
+        /** Stops reporting. */
+        @Override
+        public void close() {
+            _timer.shutdownNow();
+        }
+
+        /** Runs the reports. */
+        private final ScheduledExecutorService _timer;
+    }
+
+    @Override
+    public long getGames() {
+        return GAMES.get();
+    }
+
+    @Override
+    public long getShots() {
+        return SHOTS.get();
+    }
+
+    @Override
+    public long getHits() {
+        return HITS.get();
+    }
+
+    @Override
+    public long getSinks() {
+        return SINKS.get();
+    }
+
+    @Override
+    public long getPondered() {
+        return PONDERED.get();
+    }
+
+    @Override
+    public long getJoins() {
+        return JOINS.get();
+    }
+
+    @Override
+    public long getWaiting() {
+        return WAITING.get();
+    }
+
+    @Override
+    public long getMatches() {
+        return MATCHES.get();
+    }
+
+    @Override
+    public long getFills() {
+        return FILLS.get();
+    }
+
+    @Override
+    public String getSnapshot() {
+        return snapshot();
+    }
+
+    /** The JMX domain of the metrics. */
+    static final String DOMAIN = "battleship";
+}
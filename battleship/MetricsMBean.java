@@ -0,0 +1,38 @@
+package battleship;
+
+/** The management interface of the Metrics counters.
+ *  @author Andrew Fang */
+public interface MetricsMBean {
+
+    /** Returns the number of games started. */
+    long getGames();
+
+    /** Returns the number of shots fired. */
+    long getShots();
+
+    /** Returns the number of shots that hit a ship. */
+    long getHits();
+
+    /** Returns the number of ships sunk. */
+    long getSinks();
+
+    /** Returns the number of machine moves taken from pondering. */
+    long getPondered();
+
+    /** Returns the number of players who have joined a Lobby. */
+    long getJoins();
+
+    /** Returns the number of players waiting in a Lobby now. */
+    long getWaiting();
+
+    /** Returns the number of games a Lobby has made between two
+     *  humans. */
+    long getMatches();
+
+    /** Returns the number of games a Lobby has made by filling in a
+     *  machine. */
+    long getFills();
+
+    /** Returns a text snapshot of every counter and histogram. */
+    String getSnapshot();
+}
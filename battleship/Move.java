@@ -13,6 +13,11 @@ class Move {
 
     }
 
+    /** Returns the Move at COL, ROW. */
+    static Move create(int col, int row) {
+        return new Move(col, row);
+    }
+
     /** Return the column of this move. */
     int getCol() {
         return _col;
@@ -23,16 +28,61 @@ class Move {
         return _row;
     }
 
+    /** Returns the Move denoted by S, a column name followed by a row
+     *  number, such as "b7" or "aa12". */
+    static Move create(String s) {
+        int k = 0;
+        while (k < s.length() && Character.isLetter(s.charAt(k))) {
+            k += 1;
+        }
+        return new Move(column(s.substring(0, k)), row(s.substring(k)));
+    }
+
+    /** Returns the number of the column called NAME: a to z are 1 to 26,
+     *  aa to zz are 27 to 702, aaa is 703, and so on.  A name too long
+     *  for an int gives Integer.MAX_VALUE, which is off any board. */
+    static int column(String name) {
+        int col = 0;
+        for (char c : name.toLowerCase().toCharArray()) {
+            if (col > (Integer.MAX_VALUE - LETTERS) / LETTERS) {
+                return Integer.MAX_VALUE;
+            }
+            col = col * LETTERS + c - CONVFACTOR;
+        }
+        return col;
+    }
+
+    /** Returns the row numbered DIGITS, or Integer.MAX_VALUE, which is
+     *  off any board, if the number is too big for an int. */
+    static int row(String digits) {
+        try {
+            return Integer.parseInt(digits);
+        } catch (NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    /** Returns the name of column COL, as for column. */
+    static String columnName(int col) {
+        String name = "";
+        while (col > 0) {
+            col -= 1;
+            name = (char) (col % LETTERS + CONVFACTOR + 1) + name;
+            col /= LETTERS;
+        }
+        return name;
+    }
+
     @Override
     public String toString() {
-        String s = "%c%d";
-        char charCol = (char) (_col + CONVFACTOR);
-        return String.format(s, charCol, _row);
+        return columnName(_col) + _row;
     }
 
     /** Column and row numbers of starting and ending points. */
     private int _col, _row;
     /** The conversion factor for column letter to number. */
     static final int CONVFACTOR = 96;
+    /** The number of letters that name columns. */
+    static final int LETTERS = 26;
 
 }
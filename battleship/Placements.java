@@ -0,0 +1,98 @@
+package battleship;
+
+import java.nio.IntBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Every way a ship of each length can lie on an NxN board, with squares
+ *  numbered in rows from 0.  Placement K of length LEN covers squares
+ *  start(LEN, K) + I * step(LEN, K) for I from 0 to LEN - 1.  Placements
+ *  are immutable and shared by every thread, one set per board size.
+ *  @author Andrew Fang */
+final class Placements {
+
+    /** Returns the placements on NxN boards. */
+    static Placements of(int n) {
+        Placements p = CACHE.get(n);
+        CacheEvent.lookup("placements", p != null);
+        if (p == null) {
+            p = CACHE.computeIfAbsent(n, k -> {
+                Tables tables = Tables.shared();
+                Placements shared =
+                    tables == null ? null : tables.placements(k);
+                return shared != null ? shared : new Placements(k);
+            });
+        }
+        return p;
+    }
+
+    /** The placements on NxN boards. */
+    Placements(int n) {
+        _n = n;
+        _start = new IntBuffer[MAXLEN + 1];
+        _step = new IntBuffer[MAXLEN + 1];
+        for (int len = 1; len <= MAXLEN; len++) {
+            int across = n * Math.max(0, n - len + 1);
+            int count = len == 1 ? n * n : 2 * across;
+            int[] start = new int[count], step = new int[count];
+            int k = 0;
+            for (int r = 0; r < n; r++) {
+                for (int c = 0; c + len <= n; c++) {
+                    start[k] = r * n + c;
+                    step[k] = 1;
+                    k += 1;
+                }
+            }
+            for (int r = 0; len > 1 && r + len <= n; r++) {
+                for (int c = 0; c < n; c++) {
+                    start[k] = r * n + c;
+                    step[k] = n;
+                    k += 1;
+                }
+            }
+            _start[len] = IntBuffer.wrap(start);
+            _step[len] = IntBuffer.wrap(step);
+        }
+    }
+
+    /** The placements on NxN boards whose first squares and steps are
+     *  START[LEN] and STEP[LEN] for each length LEN from 1 to MAXLEN. */
+    Placements(int n, IntBuffer[] start, IntBuffer[] step) {
+        _n = n;
+        _start = start;
+        _step = step;
+    }
+
+    /** Returns the length of a side of the board. */
+    int size() {
+        return _n;
+    }
+
+    /** Returns the number of placements of length LEN. */
+    int count(int len) {
+        return _start[len].limit();
+    }
+
+    /** Returns the first square of placement K of length LEN. */
+    int start(int len, int k) {
+        return _start[len].get(k);
+    }
+
+    /** Returns the distance between the squares of placement K of
+     *  length LEN: 1 across the board, N down it. */
+    int step(int len, int k) {
+        return _step[len].get(k);
+    }
+
+    /** The length of the longest ship. */
+    static final int MAXLEN = 5;
+
+    /** The placements of each board size made so far. */
+    private static final ConcurrentHashMap<Integer, Placements> CACHE =
+        new ConcurrentHashMap<>();
+
+    /** The length of a side of the board. */
+    private final int _n;
+    /** By length, the first square and step of each placement, in the
+     *  heap or mapped from the tables file. */
+    private final IntBuffer[] _start, _step;
+}
@@ -11,9 +11,11 @@ import ucb.util.Stopwatch;
  */
 public abstract class Player {
 
-    /** A player that plays the SIDE pieces in GAME. */
-    Player(Side side, SelfBoard self, EnemyBoard opponent) {
+    /** A player that plays SIDE in GAME, with its own board SELF and
+     *  its view OPPONENT of the other player's board. */
+    Player(Side side, SelfBoard self, EnemyBoard opponent, Game game) {
         _side = side;
+        _game = game;
 	_myBoard = self;
 	_enemyBoard = opponent;
         _stopwatch = new Stopwatch();
@@ -29,6 +31,10 @@ public abstract class Player {
     /** Sets up a game based on the given INP. */
     abstract void gameSetup(Scanner inp);
 
+    /** Makes one shot at the enemy board, reading commands from INP if
+     *  needed.  Returns true iff the player asked to start the AIs. */
+    abstract boolean decide(Scanner inp);
+
     /** Checks to see if all ships are destroyed. */
     void checkShips() {
 	Iterator iter = _ships.iterator();
@@ -55,11 +61,21 @@ public abstract class Player {
 	_enemyBoard = e;
     }
 
+    /** Returns the enemy board. */
+    EnemyBoard enemyBoard() {
+	return _enemyBoard;
+    }
+
     /** Returns myboard. */
     SelfBoard myBoard() {
 	return _myBoard;
     }
 
+    /** Return the game I'm playing in. */
+    Game getGame() {
+        return _game;
+    }
+
     /** Return which side I'm playing. */
     Side side() {
         return _side;
@@ -80,6 +96,12 @@ public abstract class Player {
         return _stopwatch;
     }
 
+    /** Makes WATCH my stopwatch, which I may share with other players
+     *  that play for the same side. */
+    void setStopwatch(Stopwatch watch) {
+        _stopwatch = watch;
+    }
+
     /** Returns true iff stopwatch is running. */
     boolean isOn() {
         return _stopwatchOn;
@@ -91,6 +113,14 @@ public abstract class Player {
         _stopwatchOn = true;
     }
 
+    /** Sets my stopwatch to MILLIS milliseconds, and running iff ON. */
+    void restoreStopwatch(long millis, boolean on) {
+        _stopwatch.reset(millis);
+        _stopwatchOn = on;
+    }
+
+    /** The game I'm playing in. */
+    private Game _game;
     /** My stopwatch. */
     private Stopwatch _stopwatch;
     /** Is my stopwatch on. */
@@ -0,0 +1,61 @@
+package battleship;
+
+import java.util.LinkedList;
+
+import static battleship.Piece.*;
+
+/** What one player knows of the other's board, to be read but not shot
+ *  at: which squares have been shot at, and with what result.  Squares
+ *  are numbered by column and row from 1, as in a Move.  A Board adds
+ *  shooting; a BoardVersion is read-only, and shoots by making a new
+ *  version.
+ *  @author Andrew Fang */
+interface ReadOnlyBoard {
+
+    /** Returns the length of a side of the board. */
+    int size();
+
+    /** Returns what is known of the square at COL, ROW. */
+    Piece get(int col, int row);
+
+    /** Returns the number of shots taken so far. */
+    int shotsTaken();
+
+    /** Returns the number of ship squares hit so far. */
+    int hits();
+
+    /** Returns true iff the enemy's SHIP has been sunk. */
+    boolean sunk(Shipname ship);
+
+    /** Returns true iff every enemy ship has been sunk. */
+    boolean allSunk();
+
+    /** Returns true if the move M is on a spot not yet searched. */
+    default boolean isFree(Move m) {
+        return get(m.getCol(), m.getRow()) == UNKNOWN;
+    }
+
+    /** Return true iff MOVE is legal. */
+    default boolean isLegal(Move move) {
+        if (move == null) {
+            return false;
+        } else if (!isFree(move)) {
+            return false;
+        }
+        return true;
+    }
+
+    /** Return a list of all legal moves. */
+    default LinkedList<Move> legalMoves() {
+        LinkedList<Move> movelist = new LinkedList<Move>();
+        for (int x = 1; x <= size(); x++) {
+            for (int y = 1; y <= size(); y++) {
+                Move m = Move.create(x, y);
+                if (isLegal(m)) {
+                    movelist.add(m);
+                }
+            }
+        }
+        return movelist;
+    }
+}
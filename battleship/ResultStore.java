@@ -0,0 +1,355 @@
+package battleship;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** An append-only file of game results, stored by column.  Rows are
+ *  written in blocks of up to BLOCKROWS games.  A block starts with its
+ *  magic number, its row count and a directory giving each column's
+ *  encoding and length in bytes, followed by the columns one after
+ *  another.  Each column of each block is compressed on its own, with
+ *  whichever of two encodings is smaller: the zigzag varints of the
+ *  differences between successive values (good for seeds and counts), or
+ *  runs of equal values (good for strategies, sizes and winners).
+ *
+ *  A scan maps only the directory of each block and the columns asked
+ *  for, so a query reads just the bytes of the columns it uses.  A block
+ *  cut short by a crash ends the file for readers, and appending resumes
+ *  after it.  All numbers are big-endian.
+ *  @author Andrew Fang */
+final class ResultStore {
+
+    /** Not instantiated. */
+    private ResultStore() {
+    }
+
+    /** The columns of a result, all read as longs. */
+    enum Column {
+        /** The --seed value of the run. */
+        SEED,
+        /** The number of the game within its run. */
+        GAME,
+        /** The strategies of the two players, as Strategy ordinals. */
+        STRATEGY1, STRATEGY2,
+        /** The length of a side of the board. */
+        SIZE,
+        /** The winner, as a Side ordinal. */
+        WINNER,
+        /** The shots taken by each player. */
+        SHOTS1, SHOTS2,
+        /** The mean time taken by a turn, in nanoseconds. */
+        TURNNANOS
+    }
+
+    /** Appends rows to a result file. */
+    static class Writer implements Closeable {
+
+        /** A writer appending to FILE, which is created if need be. */
+        Writer(Path file) throws IOException {
+            _channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                        StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+            _channel.truncate(validLength(_channel));
+            _channel.position(_channel.size());
+            _values = new long[COLUMNS.length][BLOCKROWS];
+        }
+
+        /** Appends the result of game GAME of a run with seed SEED on
+         *  SIZExSIZE boards, in which the players used strategies
+         *  STRATEGY1 and STRATEGY2, WINNER won, they took SHOTS1 and
+         *  SHOTS2 shots, and a turn took TURNNANOS nanoseconds on
+         *  average. */
+        void append(long seed, long game, Strategy strategy1,
+                    Strategy strategy2, int size, Side winner, int shots1,
+                    int shots2, long turnNanos) throws IOException {
+            long[] row = {
+                seed, game, strategy1.ordinal(), strategy2.ordinal(), size,
+                winner.ordinal(), shots1, shots2, turnNanos
+            };
+            for (int c = 0; c < row.length; c++) {
+                _values[c][_rows] = row[c];
+            }
+            _rows += 1;
+            if (_rows == BLOCKROWS) {
+                flush();
+            }
+        }
+
+        /** Writes the rows appended since the last block as a block. */
+        void flush() throws IOException {
+            if (_rows == 0) {
+                return;
+            }
+            byte[][] data = new byte[COLUMNS.length][];
+            byte[] encoding = new byte[COLUMNS.length];
+            int length = HEADER + COLUMNS.length * ENTRY;
+            for (int c = 0; c < COLUMNS.length; c++) {
+                byte[] delta = encodeDelta(_values[c], _rows);
+                byte[] runs = encodeRuns(_values[c], _rows);
+                encoding[c] = runs.length < delta.length ? RUNS : DELTA;
+                data[c] = encoding[c] == RUNS ? runs : delta;
+                length += data[c].length;
+            }
+            ByteBuffer block = ByteBuffer.allocate(length);
+            block.putInt(MAGIC).putInt(_rows).put((byte) COLUMNS.length);
+            for (int c = 0; c < COLUMNS.length; c++) {
+                block.put(encoding[c]).putInt(data[c].length);
+            }
+            for (byte[] column : data) {
+                block.put(column);
+            }
+            block.flip();
+            while (block.hasRemaining()) {
+                _channel.write(block);
+            }
+            _rows = 0;
+        }
+
+        /** Returns the length of the file, counting only the blocks
+         *  written. */
+        long length() throws IOException {
+            return _channel.size();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            _channel.close();
+        }
+
+        /** The file. */
+        private final FileChannel _channel;
+        /** By column, the rows not yet written. */
+        private final long[][] _values;
+        /** The number of rows not yet written. */
+        private int _rows;
+    }
+
+    /** Receives the blocks of a scan. */
+    interface Visitor {
+        /** Takes a block of ROWS rows, of which VALUES[I][R] is row R of
+         *  the Ith column asked for.  VALUES is reused between blocks. */
+        void visit(int rows, long[][] values);
+    }
+
+    /** Passes every block of FILE to VISITOR, decoding only COLUMNS. */
+    static void scan(Path file, Column[] columns, Visitor visitor)
+        throws IOException {
+        long[][] values = new long[columns.length][BLOCKROWS];
+        try (FileChannel channel = FileChannel.open(file,
+                                                    StandardOpenOption.READ)) {
+            long size = channel.size();
+            long pos = 0;
+            while (true) {
+                ByteBuffer dir = directory(channel, pos, size);
+                if (dir == null) {
+                    break;
+                }
+                int rows = dir.getInt(Integer.BYTES);
+                int count = dir.get(2 * Integer.BYTES);
+                long[] start = new long[count];
+                byte[] encoding = new byte[count];
+                int[] length = new int[count];
+                long at = pos + HEADER + count * ENTRY;
+                for (int c = 0; c < count; c++) {
+                    encoding[c] = dir.get(HEADER + c * ENTRY);
+                    length[c] = dir.getInt(HEADER + c * ENTRY + 1);
+                    start[c] = at;
+                    at += length[c];
+                }
+                if (at > size) {
+                    break;
+                }
+                for (int i = 0; i < columns.length; i++) {
+                    int c = columns[i].ordinal();
+                    MappedByteBuffer data =
+                        channel.map(FileChannel.MapMode.READ_ONLY, start[c],
+                                    length[c]);
+                    decode(data, encoding[c], rows, values[i]);
+                }
+                visitor.visit(rows, values);
+                pos = at;
+            }
+        }
+    }
+
+    /** Returns a report of the mean shots to win of each strategy on each
+     *  board size in FILE. */
+    static String meanShotsToWin(Path file) throws IOException {
+        Column[] columns = {
+            Column.WINNER, Column.STRATEGY1, Column.STRATEGY2, Column.SIZE,
+            Column.SHOTS1, Column.SHOTS2
+        };
+        Map<Long, long[]> totals = new TreeMap<>();
+        scan(file, columns, (rows, v) -> {
+            long lastKey = -1;
+            long[] t = null;
+            for (int r = 0; r < rows; r++) {
+                int side = (int) v[0][r];
+                long key = v[1 + side][r] << Integer.SIZE | v[3][r];
+                if (key != lastKey) {
+                    t = totals.computeIfAbsent(key, k -> new long[2]);
+                    lastKey = key;
+                }
+                t[0] += 1;
+                t[1] += v[4 + side][r];
+            }
+        });
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<Long, long[]> e : totals.entrySet()) {
+            long[] t = e.getValue();
+            long key = e.getKey();
+            Strategy strategy = Strategy.values()[(int) (key >>> Integer.SIZE)];
+            int size = (int) key;
+            out.append(String.format("%-8s %5dx%-5d %10d games, %.2f shots"
+                                     + " to win%n", strategy, size, size,
+                                     t[0], (double) t[1] / t[0]));
+        }
+        return out.toString();
+    }
+
+    /** Returns the length of the whole blocks at the start of the file
+     *  open on CHANNEL. */
+    private static long validLength(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long pos = 0;
+        while (true) {
+            ByteBuffer dir = directory(channel, pos, size);
+            if (dir == null) {
+                return pos;
+            }
+            int count = dir.get(2 * Integer.BYTES);
+            long at = pos + HEADER + count * ENTRY;
+            for (int c = 0; c < count; c++) {
+                at += dir.getInt(HEADER + c * ENTRY + 1);
+            }
+            if (at > size) {
+                return pos;
+            }
+            pos = at;
+        }
+    }
+
+    /** Returns the header and directory of the block at POS of the file
+     *  of SIZE bytes open on CHANNEL, or null if there is no whole one
+     *  there. */
+    private static ByteBuffer directory(FileChannel channel, long pos,
+                                        long size) throws IOException {
+        if (pos + HEADER > size) {
+            return null;
+        }
+        ByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, pos,
+                                      HEADER);
+        int count = head.get(2 * Integer.BYTES);
+        if (head.getInt(0) != MAGIC || count < 0
+            || pos + HEADER + count * ENTRY > size) {
+            return null;
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, pos,
+                           HEADER + count * ENTRY);
+    }
+
+    /** Returns the first ROWS of VALUES as zigzag varints of the
+     *  differences of successive values. */
+    private static byte[] encodeDelta(long[] values, int rows) {
+        ByteBuffer out = ByteBuffer.allocate(rows * MAXVARINT);
+        long prev = 0;
+        for (int r = 0; r < rows; r++) {
+            putVarint(out, zigzag(values[r] - prev));
+            prev = values[r];
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    /** Returns the first ROWS of VALUES as runs: the zigzag varint of a
+     *  value and the varint of how many times it repeats. */
+    private static byte[] encodeRuns(long[] values, int rows) {
+        ByteBuffer out = ByteBuffer.allocate(rows * 2 * MAXVARINT);
+        for (int r = 0; r < rows;) {
+            int end = r + 1;
+            while (end < rows && values[end] == values[r]) {
+                end += 1;
+            }
+            putVarint(out, zigzag(values[r]));
+            putVarint(out, end - r);
+            r = end;
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    /** Decodes ROWS values encoded as ENCODING from DATA into VALUES. */
+    private static void decode(ByteBuffer data, byte encoding, int rows,
+                               long[] values) {
+        if (encoding == RUNS) {
+            for (int r = 0; r < rows;) {
+                long value = unzigzag(getVarint(data));
+                long run = getVarint(data);
+                for (long k = 0; k < run; k++) {
+                    values[r++] = value;
+                }
+            }
+        } else {
+            long prev = 0;
+            for (int r = 0; r < rows; r++) {
+                prev += unzigzag(getVarint(data));
+                values[r] = prev;
+            }
+        }
+    }
+
+    /** Puts V into OUT in seven-bit groups, least significant first, with
+     *  the top bit of each byte set if more follow. */
+    private static void putVarint(ByteBuffer out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte) v);
+    }
+
+    /** Returns the next varint of IN. */
+    private static long getVarint(ByteBuffer in) {
+        long v = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = in.get();
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return v;
+            }
+        }
+    }
+
+    /** Returns V with its sign moved to the low bit. */
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> (Long.SIZE - 1));
+    }
+
+    /** Undoes zigzag(V). */
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /** The columns, in the order they are stored. */
+    private static final Column[] COLUMNS = Column.values();
+
+    /** Identifies a block: "BSRS". */
+    static final int MAGIC = 0x42535253;
+    /** The most rows in a block. */
+    static final int BLOCKROWS = 1 << 16;
+    /** Column encodings. */
+    static final byte DELTA = 0, RUNS = 1;
+    /** The bytes of a block before its directory. */
+    private static final int HEADER = 2 * Integer.BYTES + 1;
+    /** The bytes of a directory entry. */
+    private static final int ENTRY = 1 + Integer.BYTES;
+    /** The most bytes of a varint. */
+    private static final int MAXVARINT = 10;
+}
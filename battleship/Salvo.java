@@ -0,0 +1,65 @@
+package battleship;
+
+import java.util.Collections;
+import java.util.Set;
+
+/** What a salvo fired by EnemyBoard.fire found: masks of the squares it
+ *  hit and missed, numbered as EnemyBoard numbers them (a bit a square,
+ *  row by row), and the ships it sank.
+ *  @author Andrew Fang */
+class Salvo {
+
+    /** The result of a salvo on an NxN board that hit the squares of HITS,
+     *  missed those of MISSES, and sank SUNK. */
+    Salvo(int n, long[] hits, long[] misses, Set<Shipname> sunk) {
+        _n = n;
+        _hits = hits;
+        _misses = misses;
+        _sunk = Collections.unmodifiableSet(sunk);
+    }
+
+    /** Returns true iff the salvo hit a ship at the square of M. */
+    boolean hit(Move m) {
+        int k = (m.getRow() - 1) * _n + m.getCol() - 1;
+        return (_hits[k / Long.SIZE] & 1L << k) != 0;
+    }
+
+    /** Returns the number of shots that hit a ship. */
+    int hits() {
+        return count(_hits);
+    }
+
+    /** Returns the number of shots that missed. */
+    int misses() {
+        return count(_misses);
+    }
+
+    /** Returns the ships the salvo sank. */
+    Set<Shipname> sunk() {
+        return _sunk;
+    }
+
+    /** Returns the number of bits set in MASK. */
+    private static int count(long[] mask) {
+        int n = 0;
+        for (long w : mask) {
+            n += Long.bitCount(w);
+        }
+        return n;
+    }
+
+    @Override
+    public String toString() {
+        return hits() + " hit, " + misses() + " missed"
+            + (_sunk.isEmpty() ? "" : ", sank " + _sunk);
+    }
+
+    /** The length of a side of the board. */
+    private final int _n;
+    /** The squares hit. */
+    private final long[] _hits;
+    /** The squares missed. */
+    private final long[] _misses;
+    /** The ships sunk. */
+    private final Set<Shipname> _sunk;
+}
@@ -0,0 +1,32 @@
+package battleship;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** A flight-recorder event spanning one phase of a MachinePlayer's search.
+ *  @author Andrew Fang */
+@Name("battleship.Search")
+@Label("AI Search Phase")
+@Category("Battleship")
+@Description("One phase of a machine player's move search")
+class SearchEvent extends Event {
+
+    /** The name of the phase. */
+    @Label("Phase")
+    String phase;
+
+    /** The length of a side of the board searched. */
+    @Label("Board Size")
+    int boardSize;
+
+    /** The number of squares that could be shot at. */
+    @Label("Candidates")
+    int candidates;
+
+    /** The number of samples (such as ship placements) the phase took. */
+    @Label("Samples")
+    long samples;
+}
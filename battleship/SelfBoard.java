@@ -8,7 +8,7 @@ class SelfBoard {
     /** The SelfBoard is NxN, assuming N is less than 26.
      *  Does nothing with the given board B. */
     SelfBoard(int n) {
-	assert n > 7 && n < 27;
+	assert n > 7 && n <= MAXSIZE;
 	_size = n;
 	_config = new Shipname[n][n];
 	for (int x = 0; x < n; x++) {
@@ -78,10 +78,38 @@ class SelfBoard {
 	}
     }
 
+    /** Returns true iff COORD lies on the board and covers no other ship. */
+    boolean isOpen(Coordinate coord) {
+	int cmin = Math.min(coord.c0(), coord.c1());
+	int cmax = Math.max(coord.c0(), coord.c1());
+	int rmin = Math.min(coord.r0(), coord.r1());
+	int rmax = Math.max(coord.r0(), coord.r1());
+	if (cmin < 1 || rmin < 1 || cmax > _size || rmax > _size) {
+	    return false;
+	}
+	for (int r = rmin; r <= rmax; r++) {
+	    for (int c = cmin; c <= cmax; c++) {
+		if (_config[r - 1][c - 1] != EMPTY) {
+		    return false;
+		}
+	    }
+	}
+	return true;
+    }
+
     /** Returns the current configuration of the board. */
     public Shipname[][] getConfig() {
         return _config;
     }
+
+    /** Returns the size of the board. */
+    int size() {
+	return _size;
+    }
+    /** The largest board kept square by square.  Bigger boards use a
+     *  SparseFleet. */
+    static final int MAXSIZE = 26;
+
     /** The configuration of the board. */
     private Shipname[][] _config;
     /** The size of the board. */
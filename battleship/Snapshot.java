@@ -0,0 +1,188 @@
+package battleship;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static battleship.Bio.*;
+import static battleship.Piece.*;
+import static battleship.Side.*;
+
+/** Saves a Game to a compact binary snapshot and restores it, so that a
+ *  game can be stopped and resumed in another run.  A snapshot holds the
+ *  game's settings, seed and rules, the states of its random-number
+ *  streams, whose turn it is, and for each player its kind, its clock,
+ *  where its ships lie and the squares it has shot at, in the order it
+ *  fired.
+ *  Everything else (hits, misses, damage, and what lastShot, lastSank and
+ *  retract see) follows from those.  A 10x10 game takes 104 bytes, and
+ *  two more for each shot.
+ *  @author Andrew Fang */
+final class Snapshot {
+
+    /** Not instantiated. */
+    private Snapshot() {
+    }
+
+    /** Returns a snapshot of GAME, whose boards are set up. */
+    static byte[] encode(Game game) {
+        int n = game.size();
+        int shots = game.player(PLAYER1).enemyBoard().shotsTaken()
+            + game.player(PLAYER2).enemyBoard().shotsTaken();
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + 2 * PLAYER
+                                             + shots * Short.BYTES);
+        buf.putInt(MAGIC).put(VERSION).put((byte) n);
+        buf.put((byte) game.numHumans()).put((byte) game.aiDeployed());
+        buf.put((byte) game.debug()).putFloat(game.getTime());
+        buf.putLong(game.seed());
+        buf.putLong(game.getRandomSource().state());
+        for (Side side : Side.values()) {
+            buf.putLong(game.randomSource(side).state());
+        }
+        buf.put((byte) game.turn().ordinal()).putInt(game.turns());
+        buf.put((byte) game.getStrategy().ordinal());
+        buf.put((byte) (game.salvo() ? 1 : 0));
+        for (Side side : Side.values()) {
+            Player p = game.player(side);
+            buf.put((byte) ((p.getBio() == MACHINE ? 1 : 0)
+                            | (p.isOn() ? 2 : 0)));
+            buf.putLong(p.stopwatch().getAccum());
+            putFleet(buf, p.myBoard());
+            EnemyBoard board = p.enemyBoard();
+            buf.putShort((short) board.shotsTaken());
+            for (int i = 0; i < board.shotsTaken(); i++) {
+                Move m = board.shot(i);
+                buf.putShort((short) ((m.getRow() - 1) * n + m.getCol() - 1));
+            }
+        }
+        return buf.array();
+    }
+
+    /** Returns the game saved in DATA, a value of encode.  Throws
+     *  IllegalArgumentException if DATA is not a snapshot. */
+    static Game decode(byte[] data) {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        try {
+            if (buf.getInt() != MAGIC || buf.get() != VERSION) {
+                throw new IllegalArgumentException("not a game snapshot");
+            }
+            int n = buf.get();
+            int humans = buf.get(), deployed = buf.get(), debug = buf.get();
+            float time = buf.getFloat();
+            Game game = new Game(humans, buf.getLong(), time, n, debug);
+            game.getRandomSource().setState(buf.getLong());
+            for (Side side : Side.values()) {
+                game.randomSource(side).setState(buf.getLong());
+            }
+            game.setAIDeployed(deployed);
+            Side turn = Side.values()[buf.get()];
+            game.setTurn(turn, buf.getInt());
+            game.setStrategy(Strategy.values()[buf.get()]);
+            game.setSalvo(buf.get() != 0);
+            Player[] players = new Player[2];
+            int[][] shots = new int[2][];
+            for (Side side : Side.values()) {
+                int flags = buf.get();
+                long clock = buf.getLong();
+                SelfBoard self = getFleet(buf, n);
+                Player p;
+                if ((flags & 1) != 0) {
+                    p = new MachinePlayer(side, self, null, game);
+                } else {
+                    p = new HumanPlayer(side, self, null, game);
+                }
+                p.restoreStopwatch(clock, (flags & 2) != 0);
+                players[side.ordinal()] = p;
+                shots[side.ordinal()] = new int[buf.getShort()];
+                for (int i = 0; i < shots[side.ordinal()].length; i++) {
+                    shots[side.ordinal()][i] = buf.getShort();
+                }
+            }
+            for (Side side : Side.values()) {
+                Player p = players[side.ordinal()];
+                EnemyBoard board = new EnemyBoard(n, players[side.opponent()
+                                                      .ordinal()].myBoard());
+                for (int k : shots[side.ordinal()]) {
+                    if (k < 0 || k >= n * n
+                        || board.get(k % n + 1, k / n + 1) != UNKNOWN) {
+                        throw new IllegalArgumentException("bad shot in game"
+                                                           + " snapshot");
+                    }
+                    board.mark(k % n + 1, k / n + 1);
+                }
+                p.setEnemyBoard(board);
+            }
+            game.setPlayers(players[0], players[1]);
+            return game;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("truncated game snapshot");
+        }
+    }
+
+    /** Writes a snapshot of GAME to FILE, replacing it atomically. */
+    static void write(Game game, Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, encode(game));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Returns the game saved in FILE. */
+    static Game read(Path file) throws IOException {
+        return decode(Files.readAllBytes(file));
+    }
+
+    /** Puts the top left column and row of each ship on BOARD into BUF,
+     *  and whether it runs down the board, in the order of
+     *  MachinePlayer.FLEET.  A ship not placed is put as 0, 0. */
+    private static void putFleet(ByteBuffer buf, SelfBoard board) {
+        Shipname[][] config = board.getConfig();
+        int n = board.size();
+        for (Shipname ship : MachinePlayer.FLEET) {
+            int col = 0, row = 0;
+            boolean down = false;
+            found:
+            for (int r = 0; r < n; r++) {
+                for (int c = 0; c < n; c++) {
+                    if (config[r][c] == ship) {
+                        col = c + 1;
+                        row = r + 1;
+                        down = r + 1 < n && config[r + 1][c] == ship;
+                        break found;
+                    }
+                }
+            }
+            buf.put((byte) col).put((byte) row).put((byte) (down ? 1 : 0));
+        }
+    }
+
+    /** Returns an NxN SelfBoard with the fleet put into BUF by putFleet. */
+    private static SelfBoard getFleet(ByteBuffer buf, int n) {
+        SelfBoard board = new SelfBoard(n);
+        for (Shipname ship : MachinePlayer.FLEET) {
+            int col = buf.get(), row = buf.get();
+            boolean down = buf.get() != 0;
+            if (col == 0) {
+                continue;
+            }
+            int len = ship.size() - 1;
+            board.place(new Ship(ship), down
+                        ? new Coordinate(col, row, col, row + len)
+                        : new Coordinate(col, row, col + len, row));
+        }
+        return board;
+    }
+
+    /** Identifies a snapshot: "BSHP". */
+    static final int MAGIC = 0x42534850;
+    /** The version of the snapshot format. */
+    static final byte VERSION = 6;
+    /** The bytes of a snapshot before the players. */
+    private static final int HEADER = 52;
+    /** The bytes of a player, less its shots. */
+    private static final int PLAYER = 1 + Long.BYTES
+        + 3 * MachinePlayer.FLEET.length + Short.BYTES;
+}
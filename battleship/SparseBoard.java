@@ -0,0 +1,115 @@
+package battleship;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static battleship.Piece.*;
+
+/** What one player knows of a SparseFleet: only the squares shot at are
+ *  stored, and every other square is implicitly UNKNOWN, so the board
+ *  takes space in proportion to the shots taken rather than its area.
+ *  @author Andrew Fang */
+class SparseBoard extends Board {
+
+    /** A board with no shots taken at FLEET. */
+    SparseBoard(SparseFleet fleet) {
+        _fleet = fleet;
+        _size = fleet.size();
+        for (Shipname ship : MachinePlayer.FLEET) {
+            _afloat[ship.ordinal()] = ship.size();
+            _shipCells += ship.size();
+        }
+    }
+
+    @Override
+    public int size() {
+        return _size;
+    }
+
+    @Override
+    public Piece get(int col, int row) {
+        Piece p = _shots.get(key(col, row));
+        return p == null ? UNKNOWN : p;
+    }
+
+    @Override
+    public boolean isFree(Move m) {
+        int col = m.getCol(), row = m.getRow();
+        return col >= 1 && row >= 1 && col <= _size && row <= _size
+            && !_shots.containsKey(key(col, row));
+    }
+
+    @Override
+    void makeMove(Move m) {
+        if (!isLegal(m)) {
+            System.out.println("Illegal Move");
+            return;
+        }
+        Metrics.SHOTS.incrementAndGet();
+        Shipname ship = _fleet.shipAt(m.getCol(), m.getRow());
+        if (ship == null) {
+            _shots.put(key(m.getCol(), m.getRow()), MISS);
+        } else {
+            _shots.put(key(m.getCol(), m.getRow()), HIT);
+            _hits += 1;
+            _openHits.add(m);
+            Metrics.HITS.incrementAndGet();
+            _afloat[ship.ordinal()] -= 1;
+            if (_afloat[ship.ordinal()] == 0) {
+                Metrics.SINKS.incrementAndGet();
+                _openHits.removeIf(h -> _fleet.shipAt(h.getCol(), h.getRow())
+                                   == ship);
+            }
+        }
+    }
+
+    @Override
+    public int shotsTaken() {
+        return _shots.size();
+    }
+
+    @Override
+    public int hits() {
+        return _hits;
+    }
+
+    @Override
+    public boolean sunk(Shipname ship) {
+        return _afloat[ship.ordinal()] == 0;
+    }
+
+    @Override
+    public boolean allSunk() {
+        return _hits == _shipCells;
+    }
+
+    /** Returns the hits made so far on ships not yet sunk, in order.  As
+     *  in the game, a player is told when it sinks a ship, and so which
+     *  of its hits were on it.  The list belongs to this board. */
+    ArrayList<Move> openHits() {
+        return _openHits;
+    }
+
+    /** Returns the key of COL, ROW in _shots. */
+    private long key(int col, int row) {
+        return (long) (row - 1) * _size + col - 1;
+    }
+
+    /** The largest board allowed. */
+    static final int MAXSIZE = 1 << 16;
+
+    /** The fleet shot at. */
+    private final SparseFleet _fleet;
+    /** The length of a side of the board. */
+    private final int _size;
+    /** The result of each shot taken, by square. */
+    private final HashMap<Long, Piece> _shots = new HashMap<>();
+    /** The number of hits made. */
+    private int _hits;
+    /** The hits made on ships not yet sunk, in order. */
+    private final ArrayList<Move> _openHits = new ArrayList<>();
+    /** The number of squares not yet hit of each ship, by ordinal. */
+    private final int[] _afloat = new int[Shipname.values().length];
+    /** The number of ship squares in the fleet. */
+    private int _shipCells;
+}
@@ -0,0 +1,80 @@
+package battleship;
+
+import java.util.Random;
+
+/** A player's own board for boards too big to hold square by square:
+ *  only where each ship lies is kept, and all other water is implicit.
+ *  Squares are numbered by column and row from 1, as in a Move.
+ *  @author Andrew Fang */
+class SparseFleet {
+
+    /** An empty NxN fleet board. */
+    SparseFleet(int n) {
+        assert n > 0 && n <= SparseBoard.MAXSIZE;
+        _size = n;
+        int ships = Shipname.values().length;
+        _col = new int[ships];
+        _row = new int[ships];
+        _vertical = new boolean[ships];
+    }
+
+    /** Returns the length of a side of the board. */
+    int size() {
+        return _size;
+    }
+
+    /** Places SHIP with its top left at COL, ROW, running down if VERTICAL
+     *  and right otherwise.  Returns false, and places nothing, if it
+     *  would run off the board or onto another ship. */
+    boolean place(Shipname ship, int col, int row, boolean vertical) {
+        int len = ship.size();
+        if (col < 1 || row < 1
+            || (vertical ? row : col) + len - 1 > _size) {
+            return false;
+        }
+        for (int k = 0; k < len; k++) {
+            if (shipAt(vertical ? col : col + k,
+                       vertical ? row + k : row) != null) {
+                return false;
+            }
+        }
+        _col[ship.ordinal()] = col;
+        _row[ship.ordinal()] = row;
+        _vertical[ship.ordinal()] = vertical;
+        return true;
+    }
+
+    /** Places every ship of the fleet at random, using RAND. */
+    void placeRandomly(Random rand) {
+        for (Shipname ship : MachinePlayer.FLEET) {
+            while (!place(ship, 1 + rand.nextInt(_size),
+                          1 + rand.nextInt(_size), rand.nextBoolean())) {
+                continue;
+            }
+        }
+    }
+
+    /** Returns the ship at COL, ROW, or null if there is only water. */
+    Shipname shipAt(int col, int row) {
+        for (Shipname ship : MachinePlayer.FLEET) {
+            int s = ship.ordinal();
+            if (_col[s] == 0) {
+                continue;
+            }
+            int along = _vertical[s] ? row - _row[s] : col - _col[s];
+            int across = _vertical[s] ? col - _col[s] : row - _row[s];
+            if (across == 0 && along >= 0 && along < ship.size()) {
+                return ship;
+            }
+        }
+        return null;
+    }
+
+    /** The length of a side of the board. */
+    private final int _size;
+    /** By ship ordinal, the top left column and row of each ship (0 if
+     *  not placed), and whether it runs down the board. */
+    private final int[] _col, _row;
+    /** See _col. */
+    private final boolean[] _vertical;
+}
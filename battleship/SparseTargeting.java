@@ -0,0 +1,173 @@
+package battleship;
+
+import java.util.Random;
+
+import static battleship.Piece.*;
+
+/** Chooses shots at a SparseBoard, with work in proportion to the shots
+ *  taken rather than to the area of the board.  While there are hits with
+ *  open water in line with them, it scores only the open squares within a
+ *  ship's length of a hit, by the weighted number of placements through
+ *  them that cover a hit (as Density does).  Otherwise it hunts: it scores
+ *  a fixed number of random squares on a lattice spaced by the shortest
+ *  ship afloat, by the placements through them, and takes the best.
+ *  @author Andrew Fang */
+class SparseTargeting {
+
+    /** A targeter breaking ties and sampling with RANDOM. */
+    SparseTargeting(Random random) {
+        _random = random;
+    }
+
+    /** Returns the square to shoot at next on BOARD. */
+    Move choose(SparseBoard board) {
+        Move m = target(board);
+        return m != null ? m : hunt(board);
+    }
+
+    /** Returns the best open square in line with a hit on a ship of BOARD
+     *  not yet sunk, or null if there is none worth shooting at. */
+    private Move target(SparseBoard board) {
+        int reach = longestAfloat(board) - 1;
+        Move best = null;
+        int bestScore = 0, ties = 0;
+        for (Move hit : board.openHits()) {
+            for (int dir = 0; dir < DIRS.length; dir += 2) {
+                for (int d = 1; d <= reach; d++) {
+                    int col = hit.getCol() + d * DIRS[dir];
+                    int row = hit.getRow() + d * DIRS[dir + 1];
+                    if (!onBoard(board, col, row)
+                        || board.get(col, row) == MISS) {
+                        break;
+                    } else if (board.get(col, row) == HIT) {
+                        continue;
+                    }
+                    int score = score(board, col, row, true);
+                    if (score > bestScore) {
+                        best = Move.create(col, row);
+                        bestScore = score;
+                        ties = 1;
+                    } else if (score == bestScore && score > 0) {
+                        ties += 1;
+                        if (_random.nextInt(ties) == 0) {
+                            best = Move.create(col, row);
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Returns the best of HUNTSAMPLES random open squares of BOARD on the
+     *  hunting lattice, or any open square if none was found. */
+    private Move hunt(SparseBoard board) {
+        int n = board.size();
+        int spacing = shortestAfloat(board);
+        Move best = null;
+        int bestScore = -1;
+        for (int k = 0; k < HUNTSAMPLES; k++) {
+            int col = 1 + _random.nextInt(n);
+            int row = 1 + _random.nextInt(n);
+            row -= (col + row) % spacing;
+            if (row < 1) {
+                row += spacing;
+            }
+            if (!onBoard(board, col, row)
+                || board.get(col, row) != UNKNOWN) {
+                continue;
+            }
+            int score = score(board, col, row, false);
+            if (score > bestScore) {
+                best = Move.create(col, row);
+                bestScore = score;
+            }
+        }
+        if (best != null) {
+            return best;
+        }
+        long cells = (long) n * n;
+        long start = _random.nextLong(cells);
+        for (long k = 0; k < cells; k++) {
+            long cell = (start + k) % cells;
+            int col = (int) (cell % n) + 1, row = (int) (cell / n) + 1;
+            if (board.get(col, row) == UNKNOWN) {
+                return Move.create(col, row);
+            }
+        }
+        return null;
+    }
+
+    /** Returns the weighted number of placements of the ships afloat on
+     *  BOARD across COL, ROW that cover no miss and, if NEEDHIT, cover at
+     *  least one hit. */
+    private int score(SparseBoard board, int col, int row, boolean needHit) {
+        int total = 0;
+        for (Shipname ship : MachinePlayer.FLEET) {
+            if (board.sunk(ship)) {
+                continue;
+            }
+            int len = ship.size();
+            for (int dir = 0; dir < DIRS.length / 2; dir += 2) {
+                int dc = DIRS[dir], dr = DIRS[dir + 1];
+                for (int offset = 0; offset < len; offset++) {
+                    int c0 = col - offset * dc, r0 = row - offset * dr;
+                    int hits = 0;
+                    boolean fits = true;
+                    for (int k = 0; k < len && fits; k++) {
+                        int c = c0 + k * dc, r = r0 + k * dr;
+                        if (!onBoard(board, c, r)) {
+                            fits = false;
+                        } else if (board.get(c, r) == MISS) {
+                            fits = false;
+                        } else if (board.get(c, r) == HIT) {
+                            hits += 1;
+                        }
+                    }
+                    if (fits && (hits > 0 || !needHit)) {
+                        total += 1 + hits * MachinePlayer.HITWEIGHT;
+                    }
+                }
+            }
+        }
+        return total;
+    }
+
+    /** Returns true iff COL, ROW is on BOARD. */
+    private static boolean onBoard(ReadOnlyBoard board, int col, int row) {
+        return col >= 1 && row >= 1 && col <= board.size()
+            && row <= board.size();
+    }
+
+    /** Returns the length of the longest ship afloat on BOARD. */
+    private static int longestAfloat(ReadOnlyBoard board) {
+        int len = 1;
+        for (Shipname ship : MachinePlayer.FLEET) {
+            if (!board.sunk(ship)) {
+                len = Math.max(len, ship.size());
+            }
+        }
+        return len;
+    }
+
+    /** Returns the length of the shortest ship afloat on BOARD. */
+    private static int shortestAfloat(ReadOnlyBoard board) {
+        int len = Integer.MAX_VALUE;
+        for (Shipname ship : MachinePlayer.FLEET) {
+            if (!board.sunk(ship)) {
+                len = Math.min(len, ship.size());
+            }
+        }
+        return len == Integer.MAX_VALUE ? 1 : len;
+    }
+
+    /** Column and row steps of the four directions: right, down, left
+     *  and up. */
+    private static final int[] DIRS = { 1, 0, 0, 1, -1, 0, 0, -1 };
+
+    /** The number of squares scored when hunting. */
+    static final int HUNTSAMPLES = 64;
+
+    /** The source of randomness. */
+    private final Random _random;
+}
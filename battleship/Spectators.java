@@ -0,0 +1,311 @@
+package battleship;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static battleship.Piece.*;
+
+/** Streams a live game to any number of spectators over TCP.  After each
+ *  turn the game publishes its frames, each encoded once into a read-only
+ *  buffer shared by every spectator: an event frame for each shot of the
+ *  turn, in the order fired (under the salvo rules, one for each shot of
+ *  the salvo), and then a snapshot frame holding both players' views of
+ *  the boards.  Each
+ *  spectator queues its own duplicates of the shared buffers (which share
+ *  their contents, copying nothing) and is sent them with gathering
+ *  writes.  A spectator that falls more than MAXPENDING frames behind
+ *  has its queue dropped in favour of the latest snapshot, so a slow
+ *  reader costs a bounded amount of memory and catches up at once.  A
+ *  new spectator starts with the latest snapshot.
+ *
+ *  Frames are big-endian: an int length of the rest of the frame, then a
+ *  type byte.  An EVENT frame continues with the turn number (int), the
+ *  side that shot (byte, its ordinal), the column and row (shorts), the
+ *  result (byte: 0 miss, 1 hit, 2 hit that sinks), and 1 if the game is
+ *  over, else 0 (byte).  A SNAPSHOT frame continues with the turn number
+ *  (int) and the board size N (short), then for each side in order, what
+ *  it knows of its enemy's board, row by row, two bits a square (0
+ *  unknown, 1 miss, 2 hit), four squares to a byte.
+ *
+ *  All the networking is done by one thread with a selector; publishing
+ *  only hands the frames to it.
+ *  @author Andrew Fang */
+class Spectators implements Closeable {
+
+    /** Starts serving spectators on PORT (any free port if 0). */
+    Spectators(int port) throws IOException {
+        _selector = Selector.open();
+        _server = ServerSocketChannel.open();
+        _server.bind(new InetSocketAddress(port));
+        _server.configureBlocking(false);
+        _server.register(_selector, SelectionKey.OP_ACCEPT);
+        _thread = new Thread(this::serve, "spectators");
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    /** Returns the port spectators connect to. */
+    int port() {
+        return _server.socket().getLocalPort();
+    }
+
+    /** Returns the number of spectators connected. */
+    int size() {
+        return _count;
+    }
+
+    /** Publishes the turn just taken by SIDE in GAME: the shots SIDE
+     *  took after the first FROM it had taken. */
+    void publish(Game game, Side side, int from) {
+        EnemyBoard board = game.player(side).enemyBoard();
+        int to = board.shotsTaken();
+        ByteBuffer[] frames = new ByteBuffer[to - from + 1];
+        for (int i = from; i < to; i++) {
+            Move shot = board.shot(i);
+            Piece piece = board.get(shot.getCol(), shot.getRow());
+            int result = piece != HIT ? 0 : board.sank(i) ? 2 : 1;
+            boolean over = i == to - 1 && game.gameOver();
+            ByteBuffer event = ByteBuffer.allocate(EVENTBYTES);
+            event.putInt(EVENTBYTES - Integer.BYTES).put(EVENT);
+            event.putInt(game.turns()).put((byte) side.ordinal());
+            event.putShort((short) shot.getCol())
+                .putShort((short) shot.getRow());
+            event.put((byte) result).put((byte) (over ? 1 : 0));
+            event.flip();
+            frames[i - from] = event.asReadOnlyBuffer();
+        }
+        frames[frames.length - 1] = snapshot(game);
+        _inbox.add(frames);
+        _selector.wakeup();
+    }
+
+    /** Returns a read-only SNAPSHOT frame of GAME. */
+    private static ByteBuffer snapshot(Game game) {
+        int n = game.size();
+        int boardBytes = (n * n + SQUARESPERBYTE - 1) / SQUARESPERBYTE;
+        int length = 1 + Integer.BYTES + Short.BYTES + 2 * boardBytes;
+        ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + length);
+        frame.putInt(length).put(SNAPSHOT).putInt(game.turns());
+        frame.putShort((short) n);
+        for (Side side : Side.values()) {
+            ReadOnlyBoard board = game.player(side).enemyBoard();
+            int bits = 0, k = 0;
+            for (int row = 1; row <= n; row++) {
+                for (int col = 1; col <= n; col++) {
+                    Piece p = board.get(col, row);
+                    int code = p == MISS ? 1 : p == HIT ? 2 : 0;
+                    bits |= code << (2 * (k % SQUARESPERBYTE));
+                    k += 1;
+                    if (k % SQUARESPERBYTE == 0) {
+                        frame.put((byte) bits);
+                        bits = 0;
+                    }
+                }
+            }
+            if (k % SQUARESPERBYTE != 0) {
+                frame.put((byte) bits);
+            }
+        }
+        frame.flip();
+        return frame.asReadOnlyBuffer();
+    }
+
+    /** Sends what it can of what has been published, waiting up to
+     *  LINGER milliseconds, then stops serving and disconnects every
+     *  spectator. */
+    @Override
+    public void close() throws IOException {
+        long end = System.currentTimeMillis() + LINGER;
+        while ((!_inbox.isEmpty() || _pending > 0)
+               && System.currentTimeMillis() < end) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        _open = false;
+        _selector.close();
+        _server.close();
+        try {
+            _thread.join(LINGER);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** The body of the networking thread. */
+    private void serve() {
+        List<Spectator> spectators = new ArrayList<>();
+        try {
+            while (_open) {
+                _selector.select();
+                for (ByteBuffer[] frames = _inbox.poll(); frames != null;
+                     frames = _inbox.poll()) {
+                    _latest = frames[frames.length - 1];
+                    for (Spectator s : spectators) {
+                        for (int i = 0; i < frames.length; i++) {
+                            if (!s.offer(frames[i], _latest)) {
+                                break;
+                            }
+                        }
+                    }
+                }
+                for (SelectionKey key : _selector.selectedKeys()) {
+                    if (key.isValid() && key.isAcceptable()) {
+                        accept(spectators);
+                    }
+                }
+                _selector.selectedKeys().clear();
+                int pending = 0;
+                for (int i = spectators.size() - 1; i >= 0; i--) {
+                    Spectator s = spectators.get(i);
+                    if (!s.flush()) {
+                        spectators.remove(i);
+                    } else {
+                        pending += s.pending();
+                    }
+                }
+                _pending = pending;
+                _count = spectators.size();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            _open = false;
+        }
+        for (Spectator s : spectators) {
+            s.close();
+        }
+        _count = 0;
+    }
+
+    /** Accepts waiting spectators, adding them to SPECTATORS. */
+    private void accept(List<Spectator> spectators) throws IOException {
+        for (SocketChannel channel = _server.accept(); channel != null;
+             channel = _server.accept()) {
+            channel.configureBlocking(false);
+            Spectator s = new Spectator(channel,
+                                        channel.register(_selector, 0));
+            if (_latest != null) {
+                s.offer(null, _latest);
+            }
+            spectators.add(s);
+        }
+    }
+
+    /** One connected spectator and the frames it has still to be sent.
+     *  Used only by the networking thread. */
+    private static class Spectator {
+
+        /** A spectator on CHANNEL, registered under KEY. */
+        Spectator(SocketChannel channel, SelectionKey key) {
+            _channel = channel;
+            _key = key;
+        }
+
+        /** Queues the frame EVENT, or if this spectator is too far
+         *  behind or EVENT is null, SNAPSHOT in place of everything not
+         *  yet begun.  Returns true iff EVENT was queued; if not, the
+         *  rest of its turn is in SNAPSHOT and need not be offered. */
+        boolean offer(ByteBuffer event, ByteBuffer snapshot) {
+            if (event != null && _queue.size() < MAXPENDING) {
+                _queue.add(event.duplicate());
+                return true;
+            }
+            ByteBuffer partial = _queue.peekFirst();
+            _queue.clear();
+            if (partial != null && partial.position() > 0) {
+                _queue.add(partial);
+            }
+            _queue.add(snapshot.duplicate());
+            return false;
+        }
+
+        /** Writes as much of the queue as the socket will take, and asks
+         *  to be woken when it can take more.  Returns false, closing
+         *  the spectator, if it has disconnected. */
+        boolean flush() {
+            try {
+                if (!_queue.isEmpty()) {
+                    _channel.write(_queue.toArray(NOBUFFERS));
+                    while (!_queue.isEmpty()
+                           && !_queue.peekFirst().hasRemaining()) {
+                        _queue.removeFirst();
+                    }
+                }
+                _key.interestOps(_queue.isEmpty() ? 0
+                                 : SelectionKey.OP_WRITE);
+                return true;
+            } catch (IOException e) {
+                close();
+                return false;
+            }
+        }
+
+        /** Returns the number of frames queued. */
+        int pending() {
+            return _queue.size();
+        }
+
+        /** Disconnects this spectator. */
+        void close() {
+            try {
+                _channel.close();
+            } catch (IOException e) {
+                return;
+            }
+        }
+
+        /** The connection. */
+        private final SocketChannel _channel;
+        /** Its registration with the selector. */
+        private final SelectionKey _key;
+        /** Frames not yet wholly sent, first first. */
+        private final ArrayDeque<ByteBuffer> _queue = new ArrayDeque<>();
+    }
+
+    /** Frame types. */
+    static final byte EVENT = 1, SNAPSHOT = 2;
+    /** The bytes of an event frame. */
+    static final int EVENTBYTES = Integer.BYTES + 1 + Integer.BYTES + 1
+        + 2 * Short.BYTES + 2;
+    /** Squares packed into a byte of a snapshot. */
+    private static final int SQUARESPERBYTE = 4;
+    /** Frames a spectator may fall behind before skipping ahead. */
+    static final int MAXPENDING = 64;
+    /** Milliseconds close waits for frames to be sent. */
+    private static final long LINGER = 1000;
+    /** An empty array, for toArray. */
+    private static final ByteBuffer[] NOBUFFERS = new ByteBuffer[0];
+
+    /** Waits for connections and for sockets that can be written. */
+    private final Selector _selector;
+    /** Accepts connections. */
+    private final ServerSocketChannel _server;
+    /** The networking thread. */
+    private final Thread _thread;
+    /** Frames published and not yet queued: the events of a turn and a
+     *  snapshot. */
+    private final ConcurrentLinkedQueue<ByteBuffer[]> _inbox =
+        new ConcurrentLinkedQueue<>();
+    /** The latest snapshot frame, for new and lagging spectators.  Used
+     *  only by the networking thread. */
+    private ByteBuffer _latest;
+    /** Frames queued, in all, as of the last pass of the networking
+     *  thread. */
+    private volatile int _pending;
+    /** Spectators connected, as of the last pass. */
+    private volatile int _count;
+    /** False once closed. */
+    private volatile boolean _open = true;
+}
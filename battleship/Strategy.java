@@ -0,0 +1,19 @@
+package battleship;
+
+/** The ways a MachinePlayer can choose its shots.
+ *  @author Andrew Fang */
+enum Strategy {
+    /** Shoot at the square most ship placements cross (Density). */
+    DENSITY,
+    /** Shoot at the square whose result tells the most about where the
+     *  fleet lies (EntropyTargeting). */
+    ENTROPY,
+    /** Shoot at the square likeliest to hit, by a model fitted to the
+     *  hits so far (Lookahead). */
+    EXPECTIMAX;
+
+    @Override
+    public String toString() {
+        return super.toString().toLowerCase();
+    }
+}
@@ -0,0 +1,237 @@
+package battleship;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/** Compares two targeting strategies with a sequential probability ratio
+ *  test.  The strategies play in pairs: for each pair, both sink the same
+ *  seeded fleet with the same random streams, so that the only difference
+ *  between their games is the strategy.  Pairs are played a block at a
+ *  time in parallel, on a pool of their own so that they do not take the
+ *  threads of the common pool that the strategies' searches fork into,
+ *  and are counted in order.
+ *
+ *  The results are not a function of the seed alone.  Each shot is
+ *  chosen before a deadline on the strategy's clock, and the strategies
+ *  search until their deadlines (the entropy strategy also gives up
+ *  counting layouts exactly after EntropyTargeting.EXACTMILLIS), so how
+ *  far they get depends on the speed of the machine and on the other
+ *  pairs running beside them.  Runs with the same seed may differ in a
+ *  few shots, and so in the verdict near its bounds.
+ *
+ *  A pair is won by the strategy that needs fewer shots; ties tell
+ *  nothing and are set aside.  The test weighs the hypothesis that the
+ *  first strategy wins a fraction P1 of the decided pairs against the
+ *  hypothesis that it wins only P0 = 1 - P1, and stops as soon as the log
+ *  likelihood ratio leaves the bounds set by the error rates ALPHA and
+ *  BETA, or after MAXPAIRS pairs with no verdict.
+ *  @author Andrew Fang */
+class StrategyTrial {
+
+    /** A trial of strategy A against strategy B on SIZExSIZE boards,
+     *  with fleets and random streams from SEED, and TIME minutes on
+     *  each strategy's clock per game. */
+    StrategyTrial(int size, Strategy a, Strategy b, long seed, float time) {
+        _size = size;
+        _strategies = new Strategy[] { a, b };
+        _root = new GameRandom(seed);
+        _time = time;
+        _shots = new int[2][size * size + 1];
+    }
+
+    /** Plays pairs of games, BLOCK at a time, until the test reaches a
+     *  verdict or MAXPAIRS pairs have been played. */
+    void run() {
+        ForkJoinPool pool = new ForkJoinPool(BLOCK);
+        try {
+            playPairs(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Plays pairs of games on POOL as for run. */
+    private void playPairs(ForkJoinPool pool) {
+        while (_verdict == null && _pairs < MAXPAIRS) {
+            List<Pair> block = new ArrayList<>();
+            for (int i = 0; i < BLOCK && _pairs + i < MAXPAIRS; i++) {
+                Pair pair = new Pair(_pairs + i);
+                pool.execute(pair);
+                block.add(pair);
+            }
+            for (Pair pair : block) {
+                int[] shots = pair.join();
+                if (_verdict == null) {
+                    record(shots[0], shots[1]);
+                }
+            }
+        }
+    }
+
+    /** Counts a pair in which the strategies took SHOTSA and SHOTSB
+     *  shots, and updates the verdict. */
+    private void record(int shotsA, int shotsB) {
+        _pairs += 1;
+        _shots[0][shotsA] += 1;
+        _shots[1][shotsB] += 1;
+        if (shotsA < shotsB) {
+            _wins[0] += 1;
+            _llr += Math.log(P1 / P0);
+        } else if (shotsB < shotsA) {
+            _wins[1] += 1;
+            _llr += Math.log((1 - P1) / (1 - P0));
+        }
+        if (_llr >= Math.log((1 - BETA) / ALPHA)) {
+            _verdict = _strategies[0];
+        } else if (_llr <= Math.log(BETA / (1 - ALPHA))) {
+            _verdict = _strategies[1];
+        }
+    }
+
+    /** Returns the number of shots STRATEGY needs to sink the fleet of
+     *  pair PAIR. */
+    private int play(Strategy strategy, int pair) {
+        long seed = _root.split(pair).nextLong();
+        Game game = new Game(0, seed, _time, _size, 0);
+        game.setStrategy(strategy);
+        SelfBoard fleet = new SelfBoard(_size);
+        new MachinePlayer(Side.PLAYER2, fleet, null, game).gameSetup(null);
+        EnemyBoard target = new EnemyBoard(_size, fleet);
+        MachinePlayer shooter = new MachinePlayer(Side.PLAYER1,
+                                                  new SelfBoard(_size),
+                                                  target, game);
+        while (!target.allSunk()) {
+            shooter.stopwatch().start();
+            Move m = shooter.chooseMove(shooter.deadline());
+            shooter.stopwatch().stop();
+            target.makeMove(m);
+        }
+        return target.shotsTaken();
+    }
+
+    /** Returns the better strategy, or null if there is no verdict. */
+    Strategy verdict() {
+        return _verdict;
+    }
+
+    /** Returns a report of the trial: the verdict, the pairs won by each
+     *  strategy, and the distribution of shots to win of each. */
+    String summary() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%d pairs: %s won %d, %s won %d, %d tied;"
+                                 + " %s%n", _pairs, _strategies[0],
+                                 _wins[0], _strategies[1], _wins[1],
+                                 _pairs - _wins[0] - _wins[1],
+                                 _verdict == null ? "no significant difference"
+                                 : _verdict + " is better"));
+        for (int s = 0; s < 2; s++) {
+            out.append(String.format("%-8s mean %.2f, median %d, 10%%-90%%"
+                                     + " %d-%d, range %d-%d%n",
+                                     _strategies[s], mean(_shots[s]),
+                                     quantile(_shots[s], 0.5),
+                                     quantile(_shots[s], 0.1),
+                                     quantile(_shots[s], 0.9),
+                                     quantile(_shots[s], 0),
+                                     quantile(_shots[s], 1)));
+        }
+        int lo = Math.min(quantile(_shots[0], 0), quantile(_shots[1], 0));
+        int hi = Math.max(quantile(_shots[0], 1), quantile(_shots[1], 1));
+        for (int from = lo - lo % BIN; from <= hi; from += BIN) {
+            out.append(String.format("%3d-%-3d", from, from + BIN - 1));
+            for (int s = 0; s < 2; s++) {
+                int count = 0;
+                for (int k = from; k < from + BIN && k < _shots[s].length;
+                     k++) {
+                    count += _shots[s][k];
+                }
+                out.append(String.format(" %5d %-20s", count,
+                                         "#".repeat(BAR * count
+                                                    / Math.max(1, _pairs))));
+            }
+            out.append(String.format("%n"));
+        }
+        return out.toString();
+    }
+
+    /** Returns the mean of the distribution COUNTS. */
+    private static double mean(int[] counts) {
+        long sum = 0, n = 0;
+        for (int k = 0; k < counts.length; k++) {
+            sum += (long) k * counts[k];
+            n += counts[k];
+        }
+        return n == 0 ? 0 : (double) sum / n;
+    }
+
+    /** Returns the least value with at least a fraction Q of the
+     *  distribution COUNTS at or below it. */
+    private static int quantile(int[] counts, double q) {
+        long n = 0;
+        for (int c : counts) {
+            n += c;
+        }
+        long seen = 0;
+        for (int k = 0; k < counts.length; k++) {
+            seen += counts[k];
+            if (counts[k] > 0 && seen >= q * n) {
+                return k;
+            }
+        }
+        return 0;
+    }
+
+    /** Both games of one pair. */
+    private class Pair extends RecursiveTask<int[]> {
+
+        /** Pair number K. */
+        Pair(int k) {
+            _k = k;
+        }
+
+        @Override
+        protected int[] compute() {
+            return new int[] {
+                play(_strategies[0], _k), play(_strategies[1], _k)
+            };
+        }
+
+        /** The number of this pair. */
+        private final int _k;
+    }
+
+    /** The fraction of decided pairs the first strategy wins if it is
+     *  better, and if it is worse. */
+    static final double P1 = 0.6, P0 = 1 - P1;
+    /** The chances of a wrong verdict either way. */
+    static final double ALPHA = 0.05, BETA = 0.05;
+    /** The most pairs played. */
+    static final int MAXPAIRS = 2000;
+    /** Pairs played at once. */
+    static final int BLOCK = 16;
+    /** The width, in shots, of a bar of the distribution. */
+    private static final int BIN = 5;
+    /** The length of a bar for all the games. */
+    private static final int BAR = 20;
+
+    /** The length of a side of the boards. */
+    private final int _size;
+    /** The strategies compared. */
+    private final Strategy[] _strategies;
+    /** The stream from which each pair's seed is split. */
+    private final GameRandom _root;
+    /** The minutes on each clock per game. */
+    private final float _time;
+    /** By strategy, the number of its games that took each number of
+     *  shots. */
+    private final int[][] _shots;
+    /** By strategy, the pairs it won. */
+    private final int[] _wins = new int[2];
+    /** The pairs counted so far. */
+    private int _pairs;
+    /** The log likelihood ratio of the better and worse hypotheses. */
+    private double _llr;
+    /** The better strategy, once the test has decided. */
+    private Strategy _verdict;
+}
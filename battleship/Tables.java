@@ -0,0 +1,230 @@
+package battleship;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A file of the AI's precomputed tables, generated once and mapped
+ *  read-only by every JVM that uses it, so that the tables are shared
+ *  through the page cache rather than rebuilt on each JVM's heap.  The
+ *  file named by the system property battleship.tables is mapped on
+ *  first use; Placements and FleetPlanner take the tables of the sizes it
+ *  holds from it, and build the others as before.  The hard fleet
+ *  layouts are what make the file worth having: FleetPlanner takes
+ *  seconds to find them for a 10x10 board and minutes for a 26x26 one.
+ *
+ *  The file starts with its magic number, VERSION, a fingerprint of the
+ *  fleet and of FleetPlanner's parameters, and the number of sizes, then
+ *  a directory giving for each size the offsets of its placements and of
+ *  its layouts.  The placements of a size are, for each length from 1 to
+ *  Placements.MAXLEN, their count and then the first squares and the
+ *  steps; the layouts are their count, the number of ships, and the
+ *  placement of each ship of each layout.  All numbers are big-endian
+ *  ints, except the fingerprint, a long.  A file of another version or
+ *  fingerprint is ignored, with a warning: its tables may be stale.
+ *  @author Andrew Fang */
+final class Tables {
+
+    /** The tables mapped in BUF, whose directory lists SIZES sizes. */
+    private Tables(ByteBuffer buf, int sizes) {
+        _buf = buf;
+        _sizes = sizes;
+    }
+
+    /** Returns the tables in the file named by the system property
+     *  battleship.tables, or null if it names none or the file cannot be
+     *  used. */
+    static Tables shared() {
+        return Shared.TABLES;
+    }
+
+    /** Returns the tables in FILE. */
+    static Tables map(Path file) throws IOException {
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(file,
+                                                    StandardOpenOption.READ)) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                              channel.size());
+        }
+        if (buf.limit() < HEADER || buf.getInt(0) != MAGIC
+            || buf.getInt(Integer.BYTES) != VERSION) {
+            throw new IllegalArgumentException("not a tables file of"
+                                               + " version " + VERSION);
+        }
+        if (buf.getLong(2 * Integer.BYTES) != fingerprint()) {
+            throw new IllegalArgumentException("made for another fleet or"
+                                               + " planner");
+        }
+        int sizes = buf.getInt(HEADER - Integer.BYTES);
+        if (sizes < 0 || HEADER + (long) sizes * ENTRY > buf.limit()) {
+            throw new IllegalArgumentException("truncated");
+        }
+        return new Tables(buf, sizes);
+    }
+
+    /** Returns the placements on NxN boards, or null if there are none
+     *  here. */
+    Placements placements(int n) {
+        int at = offset(n, 1);
+        if (at < 0) {
+            return null;
+        }
+        IntBuffer[] start = new IntBuffer[Placements.MAXLEN + 1];
+        IntBuffer[] step = new IntBuffer[Placements.MAXLEN + 1];
+        for (int len = 1; len <= Placements.MAXLEN; len++) {
+            int count = _buf.getInt(at);
+            at += Integer.BYTES;
+            start[len] = _buf.slice(at, count * Integer.BYTES)
+                .asIntBuffer();
+            at += count * Integer.BYTES;
+            step[len] = _buf.slice(at, count * Integer.BYTES).asIntBuffer();
+            at += count * Integer.BYTES;
+        }
+        return new Placements(n, start, step);
+    }
+
+    /** Returns the hard fleet layouts for NxN boards, as
+     *  FleetPlanner.layouts does, or null if there are none here. */
+    List<int[]> layouts(int n) {
+        int at = offset(n, 2);
+        if (at < 0) {
+            return null;
+        }
+        int count = _buf.getInt(at), ships = _buf.getInt(at + Integer.BYTES);
+        at += 2 * Integer.BYTES;
+        List<int[]> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int[] layout = new int[ships];
+            for (int s = 0; s < ships; s++) {
+                layout[s] = _buf.getInt(at);
+                at += Integer.BYTES;
+            }
+            result.add(layout);
+        }
+        return result;
+    }
+
+    /** Returns the offset of table TABLE (1 for placements, 2 for
+     *  layouts) of size N, or -1 if N is not in the directory. */
+    private int offset(int n, int table) {
+        for (int i = 0; i < _sizes; i++) {
+            int entry = HEADER + i * ENTRY;
+            if (_buf.getInt(entry) == n) {
+                return _buf.getInt(entry + table * Integer.BYTES);
+            }
+        }
+        return -1;
+    }
+
+    /** Writes the tables of every board size from Main.MINSIZE to MAXSIZE
+     *  to FILE, replacing it in one step. */
+    static void write(Path file, int maxSize) throws IOException {
+        int sizes = Math.max(0, maxSize - Main.MINSIZE + 1);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        int[][] offsets = new int[sizes][2];
+        int base = HEADER + sizes * ENTRY;
+        for (int i = 0; i < sizes; i++) {
+            int n = Main.MINSIZE + i;
+            Placements placements = new Placements(n);
+            offsets[i][0] = base + out.size();
+            for (int len = 1; len <= Placements.MAXLEN; len++) {
+                out.writeInt(placements.count(len));
+                for (int k = 0; k < placements.count(len); k++) {
+                    out.writeInt(placements.start(len, k));
+                }
+                for (int k = 0; k < placements.count(len); k++) {
+                    out.writeInt(placements.step(len, k));
+                }
+            }
+            List<int[]> layouts = FleetPlanner.layouts(n);
+            offsets[i][1] = base + out.size();
+            out.writeInt(layouts.size());
+            out.writeInt(MachinePlayer.FLEET.length);
+            for (int[] layout : layouts) {
+                for (int placement : layout) {
+                    out.writeInt(placement);
+                }
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream head = new DataOutputStream(bytes);
+        head.writeInt(MAGIC);
+        head.writeInt(VERSION);
+        head.writeLong(fingerprint());
+        head.writeInt(sizes);
+        for (int i = 0; i < sizes; i++) {
+            head.writeInt(Main.MINSIZE + i);
+            head.writeInt(offsets[i][0]);
+            head.writeInt(offsets[i][1]);
+        }
+        body.writeTo(head);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, bytes.toByteArray());
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Returns a hash of what the tables depend on besides their format:
+     *  the lengths of the ships and the parameters of FleetPlanner. */
+    static long fingerprint() {
+        long h = Placements.MAXLEN;
+        for (Shipname ship : MachinePlayer.FLEET) {
+            h = h * 31 + ship.size();
+        }
+        long[] planner = {
+            FleetPlanner.SEED, FleetPlanner.CHAINS, FleetPlanner.STEPS,
+            FleetPlanner.GAMES, FleetPlanner.HELDOUT
+        };
+        for (long p : planner) {
+            h = h * 31 + p;
+        }
+        return h;
+    }
+
+    /** Holds the shared tables, mapped when first asked for. */
+    private static final class Shared {
+
+        /** The tables named by battleship.tables, or null. */
+        static final Tables TABLES = load();
+
+        /** Returns the tables named by battleship.tables, or null. */
+        private static Tables load() {
+            String name = System.getProperty("battleship.tables");
+            if (name == null) {
+                return null;
+            }
+            try {
+                return map(Path.of(name));
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Not using the tables in " + name + ": "
+                                   + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /** Identifies a tables file: "BSTB". */
+    static final int MAGIC = 0x42535442;
+    /** The format of the file and of the tables in it.  Change it when
+     *  how the tables are made changes. */
+    static final int VERSION = 1;
+    /** The bytes before the directory. */
+    private static final int HEADER = 3 * Integer.BYTES + Long.BYTES;
+    /** The bytes of a directory entry: the size and two offsets. */
+    private static final int ENTRY = 3 * Integer.BYTES;
+
+    /** The mapped file. */
+    private final ByteBuffer _buf;
+    /** The number of sizes in the directory. */
+    private final int _sizes;
+}
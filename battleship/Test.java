@@ -1,5 +1,30 @@
 package battleship;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static battleship.Side.*;
+
 class Test {
     public static void main(String[] ignored) {
 	SelfBoard s = new SelfBoard();
@@ -13,5 +38,779 @@ class Test {
 	e.makeMove(m);
 	e.makeMove(new Move(1, 1));
 	System.out.println(e);
+
+	testSnapshot();
+	testWorkerOptions();
+	testResumeRun();
+	testLobby();
+	testMetrics();
+	testMoveParsing();
+	testVectorDensity();
+	testReproducible();
+	testFleetCover();
+	testSalvo();
+	testRetract();
+	testBoardVersion();
+	testResultStore();
+	testGameStore();
+	System.out.println("All tests passed.");
+    }
+
+    /** Checks that a game survives a trip through a Snapshot with its
+     *  shots in the order they were fired, and can be retracted after
+     *  it. */
+    static void testSnapshot() {
+	for (boolean salvo : new boolean[] { false, true }) {
+	    Game game = new Game(0, 7, Main.BIG, Main.SIZE, 0);
+	    game.setSalvo(salvo);
+	    game.playHeadless();
+	    byte[] data = Snapshot.encode(game);
+	    Game copy = Snapshot.decode(data);
+	    check(Arrays.equals(data, Snapshot.encode(copy)),
+		  "snapshot does not encode back to itself");
+	    check(copy.seed() == 7, "seed lost in snapshot");
+	    for (Side side : Side.values()) {
+		EnemyBoard a = game.player(side).enemyBoard();
+		EnemyBoard b = copy.player(side).enemyBoard();
+		check(a.shotsTaken() == b.shotsTaken(), "shots lost");
+		for (int i = 0; i < a.shotsTaken(); i++) {
+		    check(a.shot(i).toString().equals(b.shot(i).toString())
+			  && a.sank(i) == b.sank(i),
+			  side + "'s shot " + i + " differs after resuming");
+		}
+		int half = a.shotsTaken() / 2;
+		a.retractTo(half);
+		b.retractTo(half);
+		check(a.toString().equals(b.toString())
+		      && a.lastShot().toString()
+		      .equals(b.lastShot().toString()),
+		      "boards differ after retracting to shot " + half);
+	    }
+	    check(Arrays.equals(Snapshot.encode(game), Snapshot.encode(copy)),
+		  "snapshots differ after retracting");
+	}
+    }
+
+    /** Checks that workers are started with only the JVM options they
+     *  need. */
+    static void testWorkerOptions() {
+	List<String> args = List.of("-agentlib:jdwp=transport=dt_socket,"
+				    + "server=y,address=5005",
+				    "-Xlog:gc:file=gc.log",
+				    "-XX:StartFlightRecording=filename=a.jfr",
+				    "--add-modules=jdk.incubator.vector",
+				    "-Dbattleship.tables=t.bin", "-Xmx2g",
+				    "-Xms512m", "--add-modules", "java.se");
+	check(Coordinator.workerOptions(args)
+	      .equals(List.of("--add-modules=jdk.incubator.vector",
+			      "-Dbattleship.tables=t.bin", "-Xmx2g",
+			      "-Xms512m", "--add-modules", "java.se")),
+	      "wrong worker options " + Coordinator.workerOptions(args));
+    }
+
+    /** Checks that a run of games on worker JVMs that is killed part way
+     *  through and resumed from its checkpoint ends with the same totals
+     *  as a run left alone. */
+    static void testResumeRun() {
+	long seed = 11, games = 3000;
+	Path dir = null;
+	try {
+	    dir = Files.createTempDirectory("battleship-test");
+	    Coordinator whole = new Coordinator(seed, games, Main.SIZE,
+						Strategy.DENSITY, Main.BIG);
+	    check(whole.run(2), "run did not finish");
+
+	    Path checkpoint = dir.resolve("run.ckpt");
+	    Process run = new ProcessBuilder(
+		ProcessHandle.current().info().command().orElse("java"),
+		"-cp", System.getProperty("java.class.path"),
+		Main.class.getName(), "--workers=2", "--games=" + games,
+		"--seed=" + seed, "--checkpoint=" + checkpoint)
+		.redirectOutput(ProcessBuilder.Redirect.DISCARD)
+		.redirectError(ProcessBuilder.Redirect.DISCARD).start();
+	    while (!Files.exists(checkpoint) && run.isAlive()) {
+		Thread.sleep(5);
+	    }
+	    run.descendants().forEach(ProcessHandle::destroyForcibly);
+	    run.destroyForcibly().waitFor();
+	    Files.deleteIfExists(Path.of(System.getProperty("java.io.tmpdir"),
+					 "battleship-" + run.pid() + ".sock"));
+
+	    Coordinator resumed = Coordinator.resume(checkpoint);
+	    check(resumed.played() < games, "killed run had finished");
+	    check(resumed.run(2), "resumed run did not finish");
+	    check(resumed.summary().equals(whole.summary()),
+		  "resumed run ended with " + resumed.summary()
+		  + " and the whole run with " + whole.summary());
+	} catch (IOException | InterruptedException e) {
+	    throw new AssertionError("could not run the workers: " + e);
+	} finally {
+	    if (dir != null) {
+		for (String name : new String[] { "run.ckpt", "run.ckpt.tmp" }) {
+		    dir.resolve(name).toFile().delete();
+		}
+		dir.toFile().delete();
+	    }
+	}
+    }
+
+    /** Checks that a Lobby joined and left from several threads at once
+     *  pairs every player who stays at most once, with someone else who
+     *  is paired with it, never pairs a player who left, and finds a
+     *  game for every player who will play a machine. */
+    static void testLobby() {
+	int threads = 4, joins = 5000;
+	List<Lobby.Ticket> any = new ArrayList<>();
+	List<Lobby.Ticket> humans = new ArrayList<>();
+	List<Lobby.Ticket> left = new ArrayList<>();
+	try (Lobby lobby = new Lobby(0, LOBBYFILL)) {
+	    List<Thread> joiners = new ArrayList<>();
+	    for (int i = 0; i < threads; i++) {
+		Random rand = new Random(i);
+		Thread t = new Thread(() -> {
+			List<Lobby.Ticket> mine = new ArrayList<>();
+			List<Lobby.Ticket> picky = new ArrayList<>();
+			List<Lobby.Ticket> gone = new ArrayList<>();
+			for (int k = 0; k < joins; k++) {
+			    Lobby.Preference p =
+				Lobby.Preference.values()[rand.nextInt(3)];
+			    Lobby.Ticket ticket = lobby.join(
+				"player" + k, rand.nextBoolean() ? 10 : 12, 1,
+				1500 + rand.nextInt(400), p);
+			    if (rand.nextInt(10) == 0 && ticket.cancel()) {
+				gone.add(ticket);
+			    } else if (p == Lobby.Preference.HUMAN) {
+				picky.add(ticket);
+			    } else {
+				mine.add(ticket);
+			    }
+			}
+			synchronized (any) {
+			    any.addAll(mine);
+			    humans.addAll(picky);
+			    left.addAll(gone);
+			}
+		    });
+		t.start();
+		joiners.add(t);
+	    }
+	    for (Thread t : joiners) {
+		t.join();
+	    }
+	    Map<Lobby.Match, Integer> seats = new IdentityHashMap<>();
+	    List<Lobby.Ticket> paired = new ArrayList<>();
+	    for (Lobby.Ticket t : any) {
+		t.match().get(LOBBYFILL + 5000, TimeUnit.MILLISECONDS);
+		paired.add(t);
+	    }
+	    Thread.sleep(3 * Lobby.SWEEP);
+	    for (Lobby.Ticket t : humans) {
+		if (t.match().getNow(null) == null && t.cancel()) {
+		    left.add(t);
+		} else {
+		    paired.add(t);
+		}
+	    }
+	    for (Lobby.Ticket t : paired) {
+		Lobby.Match m = t.match().get();
+		check(m.first() == t || m.second() == t,
+		      t.name() + " got someone else's match");
+		check(m.first() != m.second(), "a player was paired with"
+		      + " itself");
+		seats.merge(m, 1, Integer::sum);
+	    }
+	    for (Map.Entry<Lobby.Match, Integer> e : seats.entrySet()) {
+		Lobby.Match m = e.getKey();
+		int players = m.second() == null ? 1 : 2;
+		check(e.getValue() == players, "a match has " + e.getValue()
+		      + " players waiting on it, not " + players);
+		check(m.second() == null
+		      || (m.second().match().getNow(null) == m
+			  && m.first().match().getNow(null) == m),
+		      "a player was paired twice");
+	    }
+	    for (Lobby.Ticket t : left) {
+		check(t.match().isCancelled(), "a player who left was paired");
+	    }
+	} catch (InterruptedException | ExecutionException
+		 | TimeoutException | CancellationException e) {
+	    throw new AssertionError("lobby failed: " + e);
+	}
+    }
+
+    /** Milliseconds a lobby player in testLobby waits for a human. */
+    private static final long LOBBYFILL = 200;
+
+    /** Checks that a headless game is counted, and that every one of its
+     *  turns is timed as a decision. */
+    static void testMetrics() {
+	long games = Metrics.GAMES.get();
+	long decisions = Metrics.DECIDE.getCount();
+	Game game = new Game(0, 11, Main.BIG, Main.SIZE, 0);
+	game.playHeadless();
+	check(Metrics.GAMES.get() == games + 1, "headless game not counted");
+	check(Metrics.DECIDE.getCount() == decisions + game.turns(),
+	      "headless decisions not timed");
+    }
+
+    /** Checks that squares named by numbers too big for an int parse as
+     *  squares off the board rather than failing. */
+    static void testMoveParsing() {
+	check(Move.create("A99999999999").getRow() == Integer.MAX_VALUE,
+	      "long row number not off the board");
+	check(Move.create("aaaaaaaaaaaaaaaa1").getCol() == Integer.MAX_VALUE,
+	      "long column name not off the board");
+	check(Move.create("zz12").toString().equals("zz12"),
+	      "move name does not read back");
+	Coordinate c = new Coordinate("a1-a99999999999");
+	check(c.r1() == Integer.MAX_VALUE, "long coordinate row not off board");
+    }
+
+    /** Checks that the SIMD density kernels give exactly what the scalar
+     *  ones do, on random boards alone and in batches, including sizes
+     *  that are not a whole number of vectors. */
+    static void testVectorDensity() {
+	check(Density.create(10) instanceof VectorDensity,
+	      "Vector API not available: run with --add-modules"
+	      + " jdk.incubator.vector");
+	Random rand = new Random(31);
+	for (int n : new int[] { 1, 5, 7, 9, 10, 15, 17, 26 }) {
+	    for (int boards : new int[] { 1, 3 }) {
+		Density scalar = new Density(n, n, boards);
+		Density simd = new VectorDensity(n, boards);
+		byte[] known = new byte[boards * n * n];
+		for (int k = 0; k < known.length; k++) {
+		    int x = rand.nextInt(5);
+		    known[k] = x == 0 ? BatchSim.HIT
+			: x == 1 ? BatchSim.MISS : BatchSim.UNKNOWN;
+		}
+		for (int b = 0; b < boards; b++) {
+		    scalar.load(b, known, b * n * n);
+		    simd.load(b, known, b * n * n);
+		}
+		scalar.clear();
+		simd.clear();
+		for (Shipname ship : MachinePlayer.FLEET) {
+		    check(scalar.add(ship.size()) == simd.add(ship.size()),
+			  "kernels count placements differently at " + n);
+		}
+		for (int b = 0; b < boards; b++) {
+		    int[] x = new int[n * n], y = new int[n * n];
+		    scalar.copyValues(b, x, 0);
+		    simd.copyValues(b, y, 0);
+		    check(Arrays.equals(x, y), "kernels disagree on board " + b
+			  + " of " + boards + " at " + n + "x" + n);
+		}
+		check(scalar.max() == simd.max(),
+		      "kernels disagree on the maximum at " + n + "x" + n);
+	    }
+	}
+    }
+
+    /** Checks that seeded play does not depend on the number of threads:
+     *  EntropyTargeting samples the same layouts on pools of one and
+     *  four threads, headless games played side by side play as they do
+     *  one at a time, and a BatchSim game plays the same in any batch. */
+    static void testReproducible() {
+	Game setup = new Game(0, 5, Main.BIG, Main.SIZE, 0);
+	SelfBoard fleet = new SelfBoard(Main.SIZE);
+	new MachinePlayer(PLAYER2, fleet, null, setup).gameSetup(null);
+	EnemyBoard board = new EnemyBoard(Main.SIZE, fleet);
+	ForkJoinPool one = new ForkJoinPool(1), four = new ForkJoinPool(4);
+	EntropyTargeting serial = new EntropyTargeting(Main.SIZE, one);
+	EntropyTargeting parallel = new EntropyTargeting(Main.SIZE, four);
+	for (int shot = 0; shot < 4; shot++) {
+	    Move a = serial.choose(board, shot, Long.MAX_VALUE);
+	    Move b = parallel.choose(board, shot, Long.MAX_VALUE);
+	    check(a != null && b != null
+		  && a.toString().equals(b.toString()),
+		  "entropy shot " + shot + " depends on the threads: " + a
+		  + " and " + b);
+	    board.makeMove(a);
+	}
+
+	int games = 16;
+	String[] alone = new String[games];
+	for (int g = 0; g < games; g++) {
+	    alone[g] = headless(g);
+	}
+	List<Callable<String>> tasks = new ArrayList<>();
+	for (int g = 0; g < games; g++) {
+	    int seed = g;
+	    tasks.add(() -> headless(seed));
+	}
+	try {
+	    List<Future<String>> together = four.invokeAll(tasks);
+	    for (int g = 0; g < games; g++) {
+		check(alone[g].equals(together.get(g).get()),
+		      "game " + g + " differs when played in parallel");
+	    }
+	} catch (InterruptedException | ExecutionException e) {
+	    throw new AssertionError("parallel games failed: " + e);
+	} finally {
+	    one.shutdown();
+	    four.shutdown();
+	}
+
+	BatchSim small = new BatchSim(Main.SIZE, 8, 9);
+	BatchSim large = new BatchSim(Main.SIZE, 300, 9);
+	small.run();
+	large.run();
+	for (int g = 0; g < small.games(); g++) {
+	    for (Side side : Side.values()) {
+		check(small.shots(g, side) == large.shots(g, side)
+		      && small.winner(g) == large.winner(g),
+		      "batch game " + g + " depends on the batch");
+	    }
+	}
+    }
+
+    /** Returns the winner and both players' shots, in order, of the
+     *  headless game with seed SEED. */
+    private static String headless(long seed) {
+	Game game = new Game(0, seed, Main.BIG, Main.SIZE, 0);
+	Side winner = game.playHeadless();
+	StringBuilder s = new StringBuilder(winner.toString());
+	for (Side side : Side.values()) {
+	    EnemyBoard b = game.player(side).enemyBoard();
+	    for (int i = 0; i < b.shotsTaken(); i++) {
+		s.append(' ').append(b.shot(i));
+	    }
+	}
+	return s.toString();
+    }
+
+    /** Checks FleetCover's exact counts against a brute-force count of
+     *  the layouts of a 6x6 board as shots are taken, among them two
+     *  that sink the patrol boat. */
+    static void testFleetCover() {
+	int n = 6;
+	Known board = new Known(n);
+	FleetCover cover = new FleetCover(n);
+	String[] shots = { "", "e6", "f6", "b3", "c2", "d6" };
+	for (String shot : shots) {
+	    if (shot.equals("c2") || shot.equals("d6")) {
+		board.shoot(Move.create(shot), Piece.MISS);
+	    } else if (!shot.isEmpty()) {
+		board.shoot(Move.create(shot), Piece.HIT);
+	    }
+	    if (shot.equals("f6")) {
+		board.sink(Shipname.PATROL);
+	    }
+	    cover.update(board);
+	    EntropyTargeting.Counts exact =
+		new EntropyTargeting.Counts(n * n);
+	    check(cover.enumerate(exact, Long.MAX_VALUE),
+		  "enumeration gave up");
+	    EntropyTargeting.Counts brute = new EntropyTargeting.Counts(n * n);
+	    layouts(0, Placements.of(n), board, new int[n * n], brute);
+	    check(exact.samples == brute.samples && exact.samples > 0
+		  && Arrays.equals(exact.hits, brute.hits)
+		  && Arrays.deepEquals(exact.sinks, brute.sinks),
+		  "FleetCover counts " + exact.samples + " layouts after "
+		  + board.shotsTaken() + " shots, not " + brute.samples);
+	}
+    }
+
+    /** Adds to COUNTS every layout of ships S and after of the fleet,
+     *  drawn from PLACEMENTS, that fits BOARD given the ships before S
+     *  placed as marked in OWNER (by square, row by row, 1 + the index of
+     *  the ship there, or 0). */
+    private static void layouts(int s, Placements placements, Known board,
+				int[] owner, EntropyTargeting.Counts counts) {
+	Shipname[] fleet = MachinePlayer.FLEET;
+	Piece[] known = board._squares;
+	if (s == fleet.length) {
+	    for (int k = 0; k < known.length; k++) {
+		if (known[k] == Piece.HIT && owner[k] == 0) {
+		    return;
+		}
+	    }
+	    counts.samples += 1;
+	    for (int k = 0; k < known.length; k++) {
+		if (known[k] == Piece.UNKNOWN && owner[k] != 0) {
+		    counts.hits[k] += 1;
+		}
+	    }
+	    for (int t = 0; t < fleet.length; t++) {
+		int open = -1, opens = 0;
+		for (int k = 0; k < known.length; k++) {
+		    if (owner[k] == t + 1 && known[k] == Piece.UNKNOWN) {
+			open = k;
+			opens += 1;
+		    }
+		}
+		if (opens == 1) {
+		    counts.sinks[t][open] += 1;
+		}
+	    }
+	    return;
+	}
+	int len = fleet[s].size();
+	for (int p = 0; p < placements.count(len); p++) {
+	    int start = placements.start(len, p);
+	    int step = placements.step(len, p);
+	    boolean fits = true;
+	    int hits = 0;
+	    for (int i = 0; i < len && fits; i++) {
+		int k = start + i * step;
+		fits = owner[k] == 0 && known[k] != Piece.MISS;
+		hits += known[k] == Piece.HIT ? 1 : 0;
+	    }
+	    if (!fits || (hits == len) != board.sunk(fleet[s])) {
+		continue;
+	    }
+	    for (int i = 0; i < len; i++) {
+		owner[start + i * step] = s + 1;
+	    }
+	    layouts(s + 1, placements, board, owner, counts);
+	    for (int i = 0; i < len; i++) {
+		owner[start + i * step] = 0;
+	    }
+	}
+    }
+
+    /** A board of any size on which shots and sinkings are simply set. */
+    private static class Known implements ReadOnlyBoard {
+
+	/** An NxN board with nothing known. */
+	Known(int n) {
+	    _n = n;
+	    _squares = new Piece[n * n];
+	    Arrays.fill(_squares, Piece.UNKNOWN);
+	}
+
+	/** Records that a shot at M gave RESULT. */
+	void shoot(Move m, Piece result) {
+	    _squares[(m.getRow() - 1) * _n + m.getCol() - 1] = result;
+	    _shots += 1;
+	    _hits += result == Piece.HIT ? 1 : 0;
+	}
+
+	/** Records that SHIP is sunk. */
+	void sink(Shipname ship) {
+	    _sunk.add(ship);
+	}
+
+	@Override
+	public int size() {
+	    return _n;
+	}
+
+	@Override
+	public Piece get(int col, int row) {
+	    return _squares[(row - 1) * _n + col - 1];
+	}
+
+	@Override
+	public int shotsTaken() {
+	    return _shots;
+	}
+
+	@Override
+	public int hits() {
+	    return _hits;
+	}
+
+	@Override
+	public boolean sunk(Shipname ship) {
+	    return _sunk.contains(ship);
+	}
+
+	@Override
+	public boolean allSunk() {
+	    return _sunk.size() == MachinePlayer.FLEET.length;
+	}
+
+	/** The length of a side. */
+	private final int _n;
+	/** By square, row by row, what is known of it. */
+	private final Piece[] _squares;
+	/** The ships sunk. */
+	private final EnumSet<Shipname> _sunk = EnumSet.noneOf(Shipname.class);
+	/** The shots and the hits taken. */
+	private int _shots, _hits;
+    }
+
+    /** Returns a 10x10 fleet with the carrier at a1-e1, the battleship at
+     *  a3-d3, the submarine at f3-f5, the destroyer at a5-c5 and the
+     *  patrol boat at e6-f6. */
+    private static SelfBoard testFleet() {
+	SelfBoard fleet = new SelfBoard(Main.SIZE);
+	String[] where = { "a1-e1", "a3-d3", "f3-f5", "a5-c5", "e6-f6" };
+	for (int s = 0; s < MachinePlayer.FLEET.length; s++) {
+	    fleet.place(new Ship(MachinePlayer.FLEET[s]),
+			new Coordinate(where[s]));
+	}
+	return fleet;
+    }
+
+    /** Returns the moves named by NAMES. */
+    private static Move[] moves(String... names) {
+	Move[] result = new Move[names.length];
+	for (int i = 0; i < names.length; i++) {
+	    result[i] = Move.create(names[i]);
+	}
+	return result;
+    }
+
+    /** Checks the results of salvos, including one that sinks two ships,
+     *  and that an illegal salvo fires nothing. */
+    static void testSalvo() {
+	EnemyBoard board = new EnemyBoard(Main.SIZE, testFleet());
+	Salvo first = board.fire(moves("a1", "b1", "c1", "j10"));
+	check(first.hits() == 3 && first.misses() == 1
+	      && first.sunk().isEmpty() && first.hit(Move.create("b1"))
+	      && !first.hit(Move.create("j10")), "first salvo: " + first);
+	Salvo second = board.fire(moves("d1", "e1", "e6", "f6", "j9"));
+	check(second.hits() == 4 && second.misses() == 1
+	      && second.sunk().equals(EnumSet.of(Shipname.CARRIER,
+						 Shipname.PATROL)),
+	      "second salvo: " + second);
+	check(board.shotsTaken() == 9 && board.hits() == 7
+	      && board.sunk(Shipname.CARRIER) && board.sunk(Shipname.PATROL)
+	      && !board.sunk(Shipname.BATTLESHIP)
+	      && board.shipsAfloat() == 3, "board after salvos");
+	check(board.get(5, 1) == Piece.HIT && board.get(10, 9) == Piece.MISS,
+	      "salvo squares not marked");
+	check(!board.sank(4) && board.sank(5) && !board.sank(6)
+	      && board.sank(7) && !board.lastSank()
+	      && board.lastShot().toString().equals("j9"),
+	      "sinking shots of the salvo misplaced");
+	check(board.fire(moves("b2", "a1")) == null
+	      && board.fire(moves("b2", "b2")) == null
+	      && board.fire(moves("b2", "k1")) == null
+	      && board.shotsTaken() == 9 && board.get(2, 2) == Piece.UNKNOWN,
+	      "illegal salvo fired");
+    }
+
+    /** Checks that retracting shots, single or in salvos, leaves a board
+     *  exactly as if they had never been taken. */
+    static void testRetract() {
+	String[] singles = { "a1", "b1", "c1", "d1", "j10", "a3" };
+	String[] salvo = { "e1", "e6", "f6", "b3", "f3" };
+	EnemyBoard board = new EnemyBoard(Main.SIZE, testFleet());
+	for (Move m : moves(singles)) {
+	    board.makeMove(m);
+	}
+	board.fire(moves(salvo));
+	String[] all = new String[singles.length + salvo.length];
+	System.arraycopy(singles, 0, all, 0, singles.length);
+	System.arraycopy(salvo, 0, all, singles.length, salvo.length);
+	for (int k = all.length - 1; k >= 0; k -= 3) {
+	    board.retractTo(k);
+	    EnemyBoard replay = new EnemyBoard(Main.SIZE, testFleet());
+	    for (int i = 0; i < k; i++) {
+		replay.makeMove(Move.create(all[i]));
+	    }
+	    sameBoards(board, replay, "after retracting to " + k);
+	    String[] rest = Arrays.copyOfRange(all, k, all.length);
+	    Salvo a = board.fire(moves(rest));
+	    Salvo b = replay.fire(moves(rest));
+	    check(a != null && b != null && a.toString().equals(b.toString()),
+		  "refiring after retracting to " + k + ": " + a + " and " + b);
+	    sameBoards(board, replay, "after refiring from " + k);
+	    board.retractTo(k);
+	}
+    }
+
+    /** Checks that A and B show the same shots, hits and sinkings, saying
+     *  WHEN they differ. */
+    private static void sameBoards(EnemyBoard a, EnemyBoard b, String when) {
+	check(a.toString().equals(b.toString())
+	      && a.shotsTaken() == b.shotsTaken() && a.hits() == b.hits()
+	      && a.shipsAfloat() == b.shipsAfloat()
+	      && a.allSunk() == b.allSunk(), "boards differ " + when);
+	for (Shipname ship : MachinePlayer.FLEET) {
+	    check(a.sunk(ship) == b.sunk(ship), ship + " differs " + when);
+	}
+	for (int i = 0; i < a.shotsTaken(); i++) {
+	    check(a.shot(i).toString().equals(b.shot(i).toString())
+		  && a.sank(i) == b.sank(i), "shot " + i + " differs " + when);
+	}
+    }
+
+    /** Checks that shooting at a BoardVersion leaves it unchanged, and
+     *  that positions reached by shots in different orders are equal,
+     *  with equal hashes, and equal to the version of a board. */
+    static void testBoardVersion() {
+	EnemyBoard board = new EnemyBoard(Main.SIZE, testFleet());
+	BoardVersion empty = BoardVersion.of(board);
+	long hash = empty.hash();
+	BoardVersion a1 = empty.shoot(Move.create("a1"), true, null);
+	check(empty.get(1, 1) == Piece.UNKNOWN && empty.shotsTaken() == 0
+	      && empty.hits() == 0 && empty.hash() == hash
+	      && a1.get(1, 1) == Piece.HIT && a1.shotsTaken() == 1,
+	      "shooting changed the parent version");
+	BoardVersion x = a1.shoot(Move.create("j10"), false, null)
+	    .shoot(Move.create("e6"), true, null)
+	    .shoot(Move.create("f6"), true, Shipname.PATROL);
+	BoardVersion y = empty.shoot(Move.create("f6"), true, null)
+	    .shoot(Move.create("j10"), false, null)
+	    .shoot(Move.create("e6"), true, Shipname.PATROL)
+	    .shoot(Move.create("a1"), true, null);
+	check(a1.shotsTaken() == 1 && a1.get(10, 10) == Piece.UNKNOWN,
+	      "shooting changed a version with children");
+	check(x.equals(y) && y.equals(x) && x.hashCode() == y.hashCode()
+	      && x.hash() == y.hash(), "the same position is not equal");
+	for (Move m : moves("a1", "j10", "e6", "f6")) {
+	    board.makeMove(m);
+	}
+	BoardVersion real = BoardVersion.of(board);
+	check(real.equals(x) && real.hashCode() == x.hashCode(),
+	      "the version of a board differs from the same shots");
+	BoardVersion z = empty.shoot(Move.create("a1"), false, null)
+	    .shoot(Move.create("j10"), false, null)
+	    .shoot(Move.create("e6"), true, null)
+	    .shoot(Move.create("f6"), true, Shipname.PATROL);
+	BoardVersion w = a1.shoot(Move.create("j10"), false, null)
+	    .shoot(Move.create("e6"), true, null)
+	    .shoot(Move.create("f6"), true, null);
+	check(!x.equals(z) && !x.equals(w) && !x.equals(a1),
+	      "different positions are equal");
+    }
+
+    /** Checks that rows appended to a result file, with extreme values,
+     *  runs and values that change every row, read back the same after
+     *  the file is reopened, that a block cut short is ignored and then
+     *  written over, and that --query reports the same means. */
+    static void testResultStore() {
+	int first = ResultStore.BLOCKROWS + 1000, total = first + 500;
+	ResultStore.Column[] all = ResultStore.Column.values();
+	long[][] rows = new long[all.length][total];
+	Random rand = new Random(40);
+	Strategy[] strategies = Strategy.values();
+	long[] extremes = { Long.MIN_VALUE, Long.MAX_VALUE, -1 };
+	for (int r = 0; r < total; r++) {
+	    rows[0][r] = r < extremes.length ? extremes[r] : r / 1000;
+	    rows[1][r] = r;
+	    rows[2][r] = (r / 7000) % strategies.length;
+	    rows[3][r] = (r / 5000 + 1) % strategies.length;
+	    rows[4][r] = r < 40000 ? 10 : 26;
+	    rows[5][r] = rand.nextInt(2);
+	    rows[6][r] = 17 + rand.nextInt(84);
+	    rows[7][r] = 17 + rand.nextInt(84);
+	    rows[8][r] = r % 2 == 0 ? -rand.nextInt(1000) : rand.nextLong();
+	}
+	Path file = null;
+	PrintStream out = System.out;
+	try {
+	    file = Files.createTempFile("battleship-test", ".results");
+	    appendRows(file, rows, 0, first);
+	    long whole = Files.size(file);
+	    ByteBuffer torn = ByteBuffer.allocate(15);
+	    torn.putInt(ResultStore.MAGIC).putInt(10).put((byte) all.length)
+		.put(ResultStore.DELTA).putInt(1000);
+	    Files.write(file, torn.array(), StandardOpenOption.APPEND);
+	    checkRows(file, all, rows, first);
+	    appendRows(file, rows, first, total);
+	    check(Files.size(file) > whole, "nothing appended");
+	    checkRows(file, all, rows, total);
+	    ResultStore.Column[] some = {
+		ResultStore.Column.SHOTS2, ResultStore.Column.SEED
+	    };
+	    checkRows(file, some, rows, total);
+
+	    Map<Long, long[]> totals = new TreeMap<>();
+	    for (int r = 0; r < total; r++) {
+		int side = (int) rows[5][r];
+		long[] t = totals.computeIfAbsent(
+		    rows[2 + side][r] << Integer.SIZE | rows[4][r],
+		    k -> new long[2]);
+		t[0] += 1;
+		t[1] += rows[6 + side][r];
+	    }
+	    StringBuilder expected = new StringBuilder();
+	    for (Map.Entry<Long, long[]> e : totals.entrySet()) {
+		long[] t = e.getValue();
+		int size = (int) (long) e.getKey();
+		expected.append(String.format(
+		    "%-8s %5dx%-5d %10d games, %.2f shots to win%n",
+		    strategies[(int) (e.getKey() >>> Integer.SIZE)], size,
+		    size, t[0], (double) t[1] / t[0]));
+	    }
+	    ByteArrayOutputStream query = new ByteArrayOutputStream();
+	    System.setOut(new PrintStream(query, true));
+	    int status = Main.run(false, "--query=" + file);
+	    System.setOut(out);
+	    check(status == 0 && query.toString().equals(expected.toString()),
+		  "--query reported\n" + query + "instead of\n" + expected);
+	} catch (IOException e) {
+	    throw new AssertionError("could not use a result file: " + e);
+	} finally {
+	    System.setOut(out);
+	    if (file != null) {
+		file.toFile().delete();
+	    }
+	}
+    }
+
+    /** Appends rows FROM to TO of the columns ROWS to FILE, by a Writer
+     *  of its own. */
+    private static void appendRows(Path file, long[][] rows, int from,
+				   int to) throws IOException {
+	Strategy[] strategies = Strategy.values();
+	try (ResultStore.Writer writer = new ResultStore.Writer(file)) {
+	    for (int r = from; r < to; r++) {
+		writer.append(rows[0][r], rows[1][r],
+			      strategies[(int) rows[2][r]],
+			      strategies[(int) rows[3][r]], (int) rows[4][r],
+			      Side.values()[(int) rows[5][r]],
+			      (int) rows[6][r], (int) rows[7][r], rows[8][r]);
+	    }
+	}
+    }
+
+    /** Checks that scanning COLUMNS of FILE reads the first COUNT rows of
+     *  ROWS, and no more. */
+    private static void checkRows(Path file, ResultStore.Column[] columns,
+				  long[][] rows, int count)
+	throws IOException {
+	int[] read = { 0 };
+	ResultStore.scan(file, columns, (n, values) -> {
+		for (int i = 0; i < columns.length; i++) {
+		    long[] want = rows[columns[i].ordinal()];
+		    for (int r = 0; r < n; r++) {
+			check(read[0] + r < count
+			      && values[i][r] == want[read[0] + r],
+			      columns[i] + " of row " + (read[0] + r)
+			      + " read as " + values[i][r]);
+		    }
+		}
+		read[0] += n;
+	    });
+	check(read[0] == count, "read " + read[0] + " rows of " + count);
+    }
+
+    /** Checks that a GameStore too large for one buffer is refused with
+     *  an IllegalArgumentException, and that its ships are stored by
+     *  their places in the fleet. */
+    static void testGameStore() {
+	int big = SelfBoard.MAXSIZE;
+	int most = Integer.MAX_VALUE / GameStore.bytesPerGame(big);
+	try {
+	    new GameStore(big, most + 1);
+	    check(false, "a store of " + (most + 1) + " games was made");
+	} catch (IllegalArgumentException e) {
+	    check(e.getMessage().contains(Integer.toString(most)),
+		  "unhelpful message: " + e.getMessage());
+	}
+	GameStore store = new GameStore(Main.SIZE, 1);
+	int g = store.add();
+	store.place(g, PLAYER2, testFleet());
+	GameStore.View view = store.view().at(g, PLAYER1);
+	for (Move m : moves("e6", "f6", "a5", "b5")) {
+	    view.makeMove(m);
+	}
+	check(view.sunk(Shipname.PATROL) && !view.sunk(Shipname.DESTROYER)
+	      && !view.sunk(Shipname.CARRIER) && view.hits() == 4,
+	      "damage stored against the wrong ships");
+    }
+
+    /** Throws an AssertionError saying MESSAGE unless OK. */
+    static void check(boolean ok, String message) {
+	if (!ok) {
+	    throw new AssertionError(message);
+	}
     }
-}
\ No newline at end of file
+}
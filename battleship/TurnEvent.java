@@ -0,0 +1,36 @@
+package battleship;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** A flight-recorder event spanning one player's decide.
+ *  @author Andrew Fang */
+@Name("battleship.Turn")
+@Label("Turn")
+@Category("Battleship")
+@Description("One player's turn")
+class TurnEvent extends Event {
+
+    /** The side whose turn it is. */
+    @Label("Side")
+    String side;
+
+    /** Whether the player is a human or a machine. */
+    @Label("Player")
+    String bio;
+
+    /** The number of this turn in its game, starting at 1. */
+    @Label("Turn")
+    int turn;
+
+    /** The length of a side of the boards. */
+    @Label("Board Size")
+    int boardSize;
+
+    /** True iff the shot hit a ship. */
+    @Label("Hit")
+    boolean hit;
+}
@@ -0,0 +1,71 @@
+package battleship;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/** A Density whose kernels use the Vector API, with the lanes running
+ *  along a row of the board.  Rows are padded to a whole number of
+ *  vectors so that no load is masked.  Needs --add-modules jdk.incubator.vector
+ *  to compile and run; Density.create falls back to the scalar kernels
+ *  without it.
+ *  @author Andrew Fang */
+class VectorDensity extends Density {
+
+    /** A VectorDensity for NxN boards. */
+    VectorDensity(int n) {
+        this(n, 1);
+    }
+
+    /** A VectorDensity for a batch of up to BOARDS NxN boards. */
+    VectorDensity(int n, int boards) {
+        super(n, (n + LANES - 1) / LANES * LANES, boards);
+    }
+
+    @Override
+    int addRows(int[] miss, int[] hits, int[] open, int len, int[] out) {
+        int stride = _stride;
+        int count = 0;
+        for (int r = 0; r + len <= _rows; r++) {
+            for (int c = 0; c < stride; c += LANES) {
+                IntVector blocked = IntVector.zero(SPECIES);
+                IntVector weight = IntVector.broadcast(SPECIES, 1);
+                for (int k = 0; k < len; k++) {
+                    int at = (r + k) * stride + c;
+                    blocked = blocked.or(IntVector.fromArray(SPECIES, miss, at));
+                    weight = weight.add(IntVector.fromArray(SPECIES, hits, at));
+                }
+                VectorMask<Integer> fits =
+                    blocked.compare(VectorOperators.EQ, 0);
+                count += fits.trueCount();
+                IntVector add = IntVector.zero(SPECIES).blend(weight, fits);
+                for (int k = 0; k < len; k++) {
+                    int at = (r + k) * stride + c;
+                    IntVector o = IntVector.fromArray(SPECIES, open, at);
+                    IntVector.fromArray(SPECIES, out, at)
+                        .add(add.mul(o)).intoArray(out, at);
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    int max(int[] values, int[] open) {
+        IntVector best = IntVector.broadcast(SPECIES, -1);
+        for (int k = 0; k < _rows * _stride; k += LANES) {
+            VectorMask<Integer> free = IntVector.fromArray(SPECIES, open, k)
+                .compare(VectorOperators.EQ, 1);
+            best = best.blend(best.max(
+                IntVector.fromArray(SPECIES, values, k)), free);
+        }
+        return best.reduceLanes(VectorOperators.MAX);
+    }
+
+    /** The vector shape used. */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+    /** The number of lanes in a vector. */
+    private static final int LANES = SPECIES.length();
+}
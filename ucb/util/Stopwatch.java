@@ -77,6 +77,12 @@ public class Stopwatch {
     accum = 0;
   }
 
+  /** Stop all subtimers, and set accumulated time to MILLIS msec. */
+  public void reset (long millis) {
+    reset ();
+    accum = millis;
+  }
+
   /** Total accumulated time that isRunning () has been true since last
    *  reset. */
   private long accum;